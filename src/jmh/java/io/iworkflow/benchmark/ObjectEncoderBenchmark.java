@@ -0,0 +1,93 @@
+package io.iworkflow.benchmark;
+
+import io.iworkflow.config.JacksonConfig;
+import io.iworkflow.core.ObjectEncoder;
+import io.iworkflow.gen.models.EncodedObject;
+import io.iworkflow.patterns.workflow.drainchannels.internal.ImmutableMongoDocument;
+import io.iworkflow.patterns.workflow.storage.Storage;
+import io.iworkflow.workflow.subscription.model.ImmutableCustomer;
+import io.iworkflow.workflow.subscription.model.ImmutableSubscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON encoder with the Smile encoder over the sample payload types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectEncoderBenchmark {
+
+    @Param({"json", "smile"})
+    public String encoderType;
+
+    @Param({"storage", "customer", "mongoDocument"})
+    public String payloadType;
+
+    private ObjectEncoder encoder;
+    private Object payload;
+    private EncodedObject encoded;
+
+    @Setup
+    public void setup() {
+        encoder = JacksonConfig.newObjectEncoder(JacksonConfig.newEncoderObjectMapper(), encoderType, 1024);
+
+        payload = switch (payloadType) {
+            case "storage" -> newStorage(1000);
+            case "customer" -> ImmutableCustomer.builder()
+                    .id("123")
+                    .email("jobseeker@indeed.com")
+                    .firstName("Job")
+                    .lastName("Seeker")
+                    .subscription(ImmutableSubscription.builder()
+                            .billingPeriodCharge(100)
+                            .maxBillingPeriods(10)
+                            .trialPeriod(Duration.ofDays(30))
+                            .billingPeriod(Duration.ofDays(30))
+                            .build())
+                    .build();
+            case "mongoDocument" -> ImmutableMongoDocument.builder()
+                    .id("documentId-1")
+                    .status("ACCEPTED")
+                    .build();
+            default -> throw new IllegalArgumentException("unknown payload type " + payloadType);
+        };
+        encoded = encoder.encode(payload);
+    }
+
+    @Benchmark
+    public EncodedObject encode() {
+        return encoder.encode(payload);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return encoder.decode(encoded, payload.getClass());
+    }
+
+    private static Storage newStorage(final int numItems) {
+        final Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < numItems; i++) {
+            data.put("key-" + i, UUID.randomUUID().toString());
+        }
+        return new Storage(data);
+    }
+}
@@ -0,0 +1,82 @@
+package io.iworkflow.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.iworkflow.config.JacksonConfig;
+import io.iworkflow.patterns.workflow.drainchannels.internal.ImmutableMongoDocument;
+import io.iworkflow.patterns.workflow.drainchannels.internal.MongoDocument;
+import io.iworkflow.patterns.workflow.waitforstatecompletion.ImmutableJobSeekerData;
+import io.iworkflow.patterns.workflow.waitforstatecompletion.JobSeekerData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating an ObjectMapper per call (what ServiceDependency.upsert used to do) with the shared instance.
+ * Both are built like the ObjectMapper bean of Spring Boot, with the spring.jackson.* settings of application.yml
+ * and the modules of JacksonConfig.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectMapperBenchmark {
+
+    private ObjectMapper sharedMapper;
+    private MongoDocument mongoDocument;
+    private JobSeekerData jobSeekerData;
+
+    @Setup
+    public void setup() {
+        sharedMapper = newConfiguredMapper();
+        mongoDocument = ImmutableMongoDocument.builder()
+                .id("documentId-1")
+                .status("ACCEPTED")
+                .build();
+        jobSeekerData = ImmutableJobSeekerData.builder()
+                .id(1)
+                .build();
+    }
+
+    @Benchmark
+    public String mongoDocumentPerCallMapper() throws JsonProcessingException {
+        return newConfiguredMapper().writeValueAsString(mongoDocument);
+    }
+
+    @Benchmark
+    public String mongoDocumentSharedMapper() throws JsonProcessingException {
+        return sharedMapper.writeValueAsString(mongoDocument);
+    }
+
+    @Benchmark
+    public JobSeekerData jobSeekerDataPerCallMapper() throws JsonProcessingException {
+        final ObjectMapper mapper = newConfiguredMapper();
+        return mapper.readValue(mapper.writeValueAsString(jobSeekerData), JobSeekerData.class);
+    }
+
+    @Benchmark
+    public JobSeekerData jobSeekerDataSharedMapper() throws JsonProcessingException {
+        return sharedMapper.readValue(sharedMapper.writeValueAsString(jobSeekerData), JobSeekerData.class);
+    }
+
+    private static ObjectMapper newConfiguredMapper() {
+        final Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder()
+                // spring.jackson.default-property-inclusion
+                .serializationInclusion(JsonInclude.Include.NON_NULL);
+        new JacksonConfig().iwfJacksonModulesCustomizer().customize(builder);
+        return builder.build();
+    }
+}
@@ -0,0 +1,92 @@
+package io.iworkflow.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.iworkflow.core.command.BaseCommand;
+import io.iworkflow.core.command.CommandRequest;
+import io.iworkflow.core.communication.InternalChannelCommand;
+import io.iworkflow.patterns.workflow.scalableparallel.models.InFlightChildSet;
+import io.iworkflow.patterns.workflow.scalableparallel.models.InFlightChildren;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the worker side cost of one loop of the scalable-parallel ParentWorkflow by its concurrency: one child
+ * completes and another one is started.
+ * <p>
+ * waitListArray is what LoopForNextMessageState used to do: decode the String[] of the waiting children, remove the
+ * completed one from a copied list, encode the whole list back, and build a channel command per waiting child.
+ * inFlightChildSet decodes the bitmaps of InFlightChildren, and waits on the single completion channel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParentLoopBenchmark {
+
+    private static final String CHILD_ID_PREFIX = "processing-request-receiver-1-";
+
+    @Param({"90", "1000", "5000"})
+    public int concurrency;
+
+    private ObjectMapper mapper;
+    private String encodedWaitList;
+    private String encodedInFlightChildren;
+    private String completedChildId;
+    private String startedChildId;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        mapper = new ObjectMapper();
+        final String[] waitList = new String[concurrency];
+        final InFlightChildSet inFlightChildren = InFlightChildSet.of(null);
+        for (int i = 0; i < concurrency; i++) {
+            waitList[i] = CHILD_ID_PREFIX + i;
+            inFlightChildren.add(CHILD_ID_PREFIX + i);
+        }
+        encodedWaitList = mapper.writeValueAsString(waitList);
+        encodedInFlightChildren = mapper.writeValueAsString(inFlightChildren.toInFlightChildren());
+        // children complete in about the order they are started
+        completedChildId = CHILD_ID_PREFIX + 0;
+        startedChildId = CHILD_ID_PREFIX + concurrency;
+    }
+
+    @Benchmark
+    public Object waitListArray() throws JsonProcessingException {
+        final String[] currentWaitChilds = mapper.readValue(encodedWaitList, String[].class);
+        final ArrayList<String> newWaitList = new ArrayList<>(Arrays.stream(currentWaitChilds).toList());
+        newWaitList.remove(completedChildId);
+        newWaitList.add(startedChildId);
+        final String encoded = mapper.writeValueAsString(newWaitList.toArray(new String[0]));
+
+        final ArrayList<BaseCommand> commands = new ArrayList<>();
+        newWaitList.forEach(childWfId -> commands.add(InternalChannelCommand.create("ChildComplete_" + childWfId)));
+        return new Object[]{encoded, CommandRequest.forAnyCommandCompleted(commands.toArray(new BaseCommand[0]))};
+    }
+
+    @Benchmark
+    public Object inFlightChildSet() throws JsonProcessingException {
+        final InFlightChildSet inFlightChildren = InFlightChildSet.of(
+                mapper.readValue(encodedInFlightChildren, InFlightChildren.class));
+        inFlightChildren.remove(completedChildId);
+        inFlightChildren.add(startedChildId);
+        final String encoded = mapper.writeValueAsString(inFlightChildren.toInFlightChildren());
+
+        return new Object[]{encoded, CommandRequest.forAnyCommandCompleted(InternalChannelCommand.create("ChildComplete"))};
+    }
+}
@@ -0,0 +1,66 @@
+package io.iworkflow.benchmark;
+
+import io.iworkflow.config.JacksonConfig;
+import io.iworkflow.core.Client;
+import io.iworkflow.core.ClientOptions;
+import io.iworkflow.core.Registry;
+import io.iworkflow.patterns.workflow.storage.AddStorageItemRequest;
+import io.iworkflow.patterns.workflow.storage.StorageClient;
+import io.iworkflow.patterns.workflow.storage.StorageWorkflow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the storage write throughput with concurrent writers, by the number of storage workflow shards.
+ * 0 is the singleton storage workflow, where all the writes wait for the same lock.
+ * <p>
+ * Requires a running iWF server(localhost:8801) and this application as the worker(localhost:8803).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+@Fork(1)
+public class StorageWriteBenchmark {
+    private static final int NUM_KEYS = 10_000;
+
+    @Param({"0", "1", "4", "16"})
+    public int numWorkflowShards;
+
+    private StorageClient storageClient;
+
+    @Setup
+    public void setup() {
+        final Registry registry = new Registry();
+        registry.addWorkflow(new StorageWorkflow());
+        final Client client = new Client(registry,
+                ClientOptions.builder()
+                        .workerUrl("http://localhost:8803/worker")
+                        .serverUrl("http://localhost:8801")
+                        .objectEncoder(JacksonConfig.newObjectEncoder(JacksonConfig.newEncoderObjectMapper(), "json", 0))
+                        .build()
+        );
+        storageClient = new StorageClient(client, numWorkflowShards);
+    }
+
+    @Benchmark
+    public void addItem() {
+        final String key = "key-" + ThreadLocalRandom.current().nextInt(NUM_KEYS);
+        storageClient.addItem(new AddStorageItemRequest(key, "value"));
+    }
+}
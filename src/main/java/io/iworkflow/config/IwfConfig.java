@@ -1,10 +1,18 @@
 package io.iworkflow.config;
 
 import io.iworkflow.core.*;
+import io.iworkflow.worker.WorkerCallbackExecutor;
+import io.iworkflow.worker.WorkerErrorReporter;
+import io.iworkflow.worker.WorkerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+
 @Configuration
 public class IwfConfig {
     @Bean
@@ -13,31 +21,70 @@ public class IwfConfig {
     }
 
     @Bean
-    public WorkerService workerService(final Registry registry) {
-        return new WorkerService(registry, WorkerOptions.defaultOptions);
+    public WorkerService workerService(final Registry registry, final ObjectEncoder objectEncoder) {
+        return new WorkerService(registry, ImmutableWorkerOptions.builder()
+                .objectEncoder(objectEncoder)
+                .build());
+    }
+
+    @Bean
+    public WorkerCallbackExecutor workerCallbackExecutor(
+            final @Value("${iwf.worker.callback.mode:servlet}") String mode,
+            final @Value("${iwf.worker.callback.max-concurrency-per-workflow-type:1000}") int maxConcurrencyPerWorkflowType,
+            final @Value("${iwf.worker.callback.acquire-timeout-millis:30000}") long acquireTimeoutMillis) {
+        return new WorkerCallbackExecutor(
+                WorkerCallbackExecutor.Mode.fromString(mode),
+                maxConcurrencyPerWorkflowType,
+                Duration.ofMillis(acquireTimeoutMillis)
+        );
+    }
+
+    @Bean
+    public WorkerMetrics workerMetrics(final MeterRegistry meterRegistry) {
+        return new WorkerMetrics(meterRegistry);
+    }
+
+    @Bean
+    public WorkerErrorReporter workerErrorReporter(
+            final MeterRegistry meterRegistry,
+            final @Value("${iwf.worker.error.non-retryable-types:java.lang.IllegalArgumentException}") List<String> nonRetryableTypes,
+            final @Value("${iwf.worker.error.max-stack-trace-frames:10}") int maxStackTraceFrames,
+            final @Value("${iwf.worker.error.max-fingerprints:1000}") int maxFingerprints,
+            final @Value("${iwf.worker.error.dedup-window-seconds:600}") long dedupWindowSeconds,
+            final @Value("${iwf.worker.error.log-permits-per-second:1}") double logPermitsPerSecond) {
+        return new WorkerErrorReporter(
+                meterRegistry,
+                new HashSet<>(nonRetryableTypes),
+                maxStackTraceFrames,
+                maxFingerprints,
+                Duration.ofSeconds(dedupWindowSeconds),
+                logPermitsPerSecond
+        );
     }
 
     @Bean
-    public UnregisteredClient unregisteredClient(final @Value("${iwf.worker.url}") String workerUrl,
+    public UnregisteredClient unregisteredClient(final ObjectEncoder objectEncoder,
+                                                 final @Value("${iwf.worker.url}") String workerUrl,
                                                  final @Value("${iwf.server.url}") String serverUrl) {
         return new UnregisteredClient(
                 ClientOptions.builder()
                         .workerUrl(workerUrl)
                         .serverUrl(serverUrl)
-                        .objectEncoder(new JacksonJsonObjectEncoder())
+                        .objectEncoder(objectEncoder)
                         .build()
         );
     }
 
     @Bean
     public Client client(Registry registry,
+                         final ObjectEncoder objectEncoder,
                          final @Value("${iwf.worker.url}") String workerUrl,
                          final @Value("${iwf.server.url}") String serverUrl) {
         return new Client(registry,
                 ClientOptions.builder()
                         .workerUrl(workerUrl)
                         .serverUrl(serverUrl)
-                        .objectEncoder(new JacksonJsonObjectEncoder())
+                        .objectEncoder(objectEncoder)
                         .build()
         );
     }
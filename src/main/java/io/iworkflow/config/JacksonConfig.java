@@ -0,0 +1,75 @@
+package io.iworkflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.iworkflow.core.JacksonJsonObjectEncoder;
+import io.iworkflow.core.ObjectEncoder;
+import io.iworkflow.core.ObjectWorkflow;
+import io.iworkflow.encoder.SmileObjectEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * The single Jackson configuration of this application. The ObjectMapper built by Spring Boot (configured by
+ * {@code spring.jackson.*}) is shared by the controllers and the workflows/states.
+ * ObjectMapper is thread-safe once configured, so there is no need to create one per call.
+ *
+ * <p>The iWF ObjectEncoder shares its own mapper instead, with the default settings of the SDK's encoder, so that
+ * {@code spring.jackson.*}(e.g. NON_NULL) doesn't change the format of the values persisted by the workflows.
+ *
+ * <p>The Immutables classes need no module, as they are bound via their {@code @JsonDeserialize(as = Immutable...)}
+ * annotations.
+ */
+@Configuration
+public class JacksonConfig {
+    private final ObjectMapper encoderObjectMapper = newEncoderObjectMapper();
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer iwfJacksonModulesCustomizer() {
+        return builder -> builder.modulesToInstall(new Jdk8Module(), new JavaTimeModule());
+    }
+
+    /**
+     * The encoder of data attributes, state inputs and channel values, see iwf.encoder.type.
+     * The smile encoder can still decode the values encoded in JSON, so it's safe to switch for existing workflows.
+     */
+    @Bean
+    public ObjectEncoder objectEncoder(final @Value("${iwf.encoder.type:json}") String encoderType,
+                                       final @Value("${iwf.encoder.compression-threshold-bytes:1024}") int compressionThresholdBytes) {
+        return newObjectEncoder(encoderObjectMapper, encoderType, compressionThresholdBytes);
+    }
+
+    /**
+     * @return a mapper with the default settings of the SDK's encoder, for {@link #newObjectEncoder}
+     */
+    public static ObjectMapper newEncoderObjectMapper() {
+        return new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .registerModule(new JavaTimeModule());
+    }
+
+    /**
+     * Builds the encoder like the bean does, e.g. for the benchmarks.
+     */
+    public static ObjectEncoder newObjectEncoder(final ObjectMapper encoderObjectMapper, final String encoderType,
+                                                 final int compressionThresholdBytes) {
+        // keeps the encoding type of the SDK's default encoder, so that the values stay decodable by it
+        final ObjectEncoder jsonEncoder = new JacksonJsonObjectEncoder(
+                encoderObjectMapper, new JacksonJsonObjectEncoder().getEncodingType());
+        return switch (encoderType) {
+            case "json" -> jsonEncoder;
+            case "smile" -> new SmileObjectEncoder(encoderObjectMapper, jsonEncoder, compressionThresholdBytes);
+            default -> throw new IllegalArgumentException("unsupported iwf.encoder.type: " + encoderType);
+        };
+    }
+
+    @Bean
+    public JacksonWarmupProcessor jacksonWarmupProcessor(final List<ObjectWorkflow> workflows) {
+        return new JacksonWarmupProcessor(encoderObjectMapper, workflows);
+    }
+}
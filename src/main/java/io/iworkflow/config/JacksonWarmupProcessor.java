@@ -0,0 +1,60 @@
+package io.iworkflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.iworkflow.core.ObjectWorkflow;
+import io.iworkflow.core.StateDef;
+import io.iworkflow.core.communication.CommunicationMethodDef;
+import io.iworkflow.core.communication.InternalChannelDef;
+import io.iworkflow.core.communication.SignalChannelDef;
+import io.iworkflow.core.persistence.DataAttributeDef;
+import io.iworkflow.core.persistence.PersistenceFieldDef;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds and caches the Jackson serializers and deserializers of all the types used by the registered workflows
+ * (state inputs, data attributes and channel values) at startup, so that the first state executions don't pay for it.
+ * It's given the mapper of the iWF ObjectEncoder, which encodes these values, see JacksonConfig.
+ */
+public class JacksonWarmupProcessor implements SmartInitializingSingleton {
+    private final ObjectMapper objectMapper;
+    private final List<ObjectWorkflow> workflows;
+
+    public JacksonWarmupProcessor(final ObjectMapper objectMapper, final List<ObjectWorkflow> workflows) {
+        this.objectMapper = objectMapper;
+        this.workflows = workflows;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        final Set<Class<?>> types = new HashSet<>();
+        workflows.forEach(workflow -> {
+            for (final StateDef stateDef : workflow.getWorkflowStates()) {
+                types.add(stateDef.getWorkflowState().getInputType());
+            }
+            for (final PersistenceFieldDef field : workflow.getPersistenceSchema()) {
+                if (field instanceof DataAttributeDef) {
+                    types.add(((DataAttributeDef) field).getDataAttributeType());
+                }
+            }
+            for (final CommunicationMethodDef method : workflow.getCommunicationSchema()) {
+                if (method instanceof InternalChannelDef) {
+                    types.add(((InternalChannelDef) method).getValueType());
+                } else if (method instanceof SignalChannelDef) {
+                    types.add(((SignalChannelDef) method).getValueType());
+                }
+            }
+        });
+
+        types.stream()
+                // some states return null as the input type of Void
+                .filter(type -> type != null && type != Void.class)
+                .forEach(type -> {
+                    objectMapper.canSerialize(type);
+                    objectMapper.canDeserialize(objectMapper.constructType(type));
+                });
+    }
+}
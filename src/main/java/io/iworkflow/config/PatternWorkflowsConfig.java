@@ -1,5 +1,6 @@
 package io.iworkflow.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.iworkflow.patterns.services.ServiceDependency;
 import io.iworkflow.patterns.workflow.cron.CronScheduleWorkflow;
 import io.iworkflow.patterns.workflow.drainchannels.internal.DrainInternalChannelsWorkflow;
@@ -8,6 +9,7 @@ import io.iworkflow.patterns.workflow.interruptible.InterruptibleExecutionWorkfl
 import io.iworkflow.patterns.workflow.intervention.ManualInterventionWorkflow;
 import io.iworkflow.patterns.workflow.parallel.ParallelStatesWithAwaitWorkflow;
 import io.iworkflow.patterns.workflow.parallel.SimpleParallelStatesWorkflow;
+import io.iworkflow.patterns.workflow.parentchild.ChildWorkflowV2;
 import io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2;
 import io.iworkflow.patterns.workflow.polling.BackoffPollingWorkflow;
 import io.iworkflow.patterns.workflow.polling.SimplePollingWorkflow;
@@ -16,6 +18,7 @@ import io.iworkflow.patterns.workflow.resettabletimer.ResettableTimerWorkflow;
 import io.iworkflow.patterns.workflow.scalableparallel.ChildWorkflow;
 import io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow;
 import io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow;
+import io.iworkflow.patterns.workflow.storage.StorageClient;
 import io.iworkflow.patterns.workflow.storage.StorageWorkflow;
 import io.iworkflow.patterns.workflow.timeout.HandlingTimeoutWorkflow;
 import io.iworkflow.patterns.workflow.waitforstatecompletion.WaitForStateCompletionWorkflow;
@@ -23,9 +26,13 @@ import io.iworkflow.core.Client;
 import io.iworkflow.core.ObjectWorkflow;
 import io.iworkflow.core.WorkflowOptions;
 import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 class PatternWorkflowsConfig {
     private static final String CRON_SCHEDULE_WORKFLOW_ID = "cron-schedule-sample";
@@ -60,6 +67,15 @@ class PatternWorkflowsConfig {
         return new StorageWorkflow();
     }
 
+    @Bean
+    public StorageClient storageClient(final Client iwfClient,
+                                       final MeterRegistry meterRegistry,
+                                       final @Value("${iwf.storage.num-workflow-shards:0}") int numWorkflowShards,
+                                       final @Value("${iwf.storage.cache.max-size:0}") long cacheMaxSize,
+                                       final @Value("${iwf.storage.cache.ttl-seconds:30}") long cacheTtlSeconds) {
+        return new StorageClient(iwfClient, numWorkflowShards, cacheMaxSize, Duration.ofSeconds(cacheTtlSeconds), meterRegistry);
+    }
+
     @Bean
     public ObjectWorkflow cronScheduleWorkflow() {
         return new CronScheduleWorkflow();
@@ -100,20 +116,26 @@ class PatternWorkflowsConfig {
         return new ParentWorkflowV2(iwfClient);
     }
 
+    @Bean
+    public ObjectWorkflow childWorkflowV2(final Client iwfClient) {
+        return new ChildWorkflowV2(iwfClient);
+    }
+
 
     @Bean
-    public WaitForStateCompletionWorkflow waitForStateCompletionWorkflow() {
-        return new WaitForStateCompletionWorkflow(new ServiceDependency(), new ServiceDependency());
+    public WaitForStateCompletionWorkflow waitForStateCompletionWorkflow(final ObjectMapper objectMapper) {
+        return new WaitForStateCompletionWorkflow(new ServiceDependency(objectMapper), new ServiceDependency(objectMapper), objectMapper);
     }
 
     @Bean
-    public DrainInternalChannelsWorkflow drainInternalChannelsWorkflow() {
-        return new DrainInternalChannelsWorkflow(new ServiceDependency(), new ServiceDependency());
+    public DrainInternalChannelsWorkflow drainInternalChannelsWorkflow(final ObjectMapper objectMapper) {
+        return new DrainInternalChannelsWorkflow(new ServiceDependency(objectMapper), new ServiceDependency(objectMapper));
     }
 
     @Bean
-    public DrainSignalChannelsWorkflow drainSignalChannelsWorkflow() {
-        return new DrainSignalChannelsWorkflow();
+    public DrainSignalChannelsWorkflow drainSignalChannelsWorkflow(
+            final @Value("${iwf.drainchannels.signal.max-signals-per-batch:10}") int maxSignalsPerBatch) {
+        return new DrainSignalChannelsWorkflow(maxSignalsPerBatch);
     }
 
     @Bean
@@ -0,0 +1,28 @@
+package io.iworkflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.iworkflow.worker.WorkerCodecMetricsConverter;
+import io.iworkflow.worker.WorkerMetrics;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WorkerWebMvcConfig implements WebMvcConfigurer {
+    private final ObjectMapper objectMapper;
+    private final WorkerMetrics workerMetrics;
+
+    public WorkerWebMvcConfig(final ObjectMapper objectMapper, final WorkerMetrics workerMetrics) {
+        this.objectMapper = objectMapper;
+        this.workerMetrics = workerMetrics;
+    }
+
+    @Override
+    public void extendMessageConverters(final List<HttpMessageConverter<?>> converters) {
+        // Put it first so that it takes precedence over the generic Jackson converter for the /worker APIs.
+        // Both use the ObjectMapper built by Spring Boot, see JacksonConfig.
+        converters.add(0, new WorkerCodecMetricsConverter(objectMapper, workerMetrics));
+    }
+}
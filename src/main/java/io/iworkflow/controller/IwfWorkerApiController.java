@@ -8,6 +8,9 @@ import io.iworkflow.gen.models.WorkflowStateWaitUntilRequest;
 import io.iworkflow.gen.models.WorkflowStateWaitUntilResponse;
 import io.iworkflow.gen.models.WorkflowWorkerRpcRequest;
 import io.iworkflow.gen.models.WorkflowWorkerRpcResponse;
+import io.iworkflow.worker.WorkerCallbackExecutor;
+import io.iworkflow.worker.WorkerErrorReporter;
+import io.iworkflow.worker.WorkerMetrics;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -16,8 +19,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
 
 import static io.iworkflow.core.WorkerService.WORKFLOW_STATE_EXECUTE_API_PATH;
 import static io.iworkflow.core.WorkerService.WORKFLOW_STATE_WAIT_UNTIL_API_PATH;
@@ -27,36 +29,68 @@ import static io.iworkflow.core.WorkerService.WORKFLOW_WORKER_RPC_API_PATH;
 @RequestMapping("/worker")
 public class IwfWorkerApiController {
 
+    private static final String ATTRIBUTE_WORKFLOW_TYPE = "iwf.workflowType";
+    private static final String ATTRIBUTE_STATE_OR_RPC = "iwf.stateOrRpc";
+
     private final WorkerService workerService;
+    private final WorkerCallbackExecutor callbackExecutor;
+    private final WorkerErrorReporter errorReporter;
+    private final WorkerMetrics metrics;
 
-    public IwfWorkerApiController(final WorkerService workerService) {
+    public IwfWorkerApiController(
+            final WorkerService workerService,
+            final WorkerCallbackExecutor callbackExecutor,
+            final WorkerErrorReporter errorReporter,
+            final WorkerMetrics metrics) {
         this.workerService = workerService;
+        this.callbackExecutor = callbackExecutor;
+        this.errorReporter = errorReporter;
+        this.metrics = metrics;
     }
 
+    // The handlers return a future so that, depending on iwf.worker.callback.mode, the callback can be completed
+    // outside the servlet container thread (see WorkerCallbackExecutor)
+
     @PostMapping(WORKFLOW_STATE_WAIT_UNTIL_API_PATH)
-    public ResponseEntity<WorkflowStateWaitUntilResponse> handleWorkflowStateWaitUntil(
-            final @RequestBody WorkflowStateWaitUntilRequest request
+    public CompletableFuture<ResponseEntity<WorkflowStateWaitUntilResponse>> handleWorkflowStateWaitUntil(
+            final @RequestBody WorkflowStateWaitUntilRequest request, final HttpServletRequest req
     ) {
-        WorkflowStateWaitUntilResponse body = workerService.handleWorkflowStateWaitUntil(request);
-        return ResponseEntity.ok(body);
+        setCallbackAttributes(req, request.getWorkflowType(), request.getWorkflowStateId());
+        final long payloadBytes = req.getContentLengthLong();
+        return callbackExecutor.submit(request.getWorkflowType(),
+                () -> ResponseEntity.ok(metrics.recordState(WorkerMetrics.API_WAIT_UNTIL,
+                        request.getWorkflowType(), request.getWorkflowStateId(), payloadBytes,
+                        () -> workerService.handleWorkflowStateWaitUntil(request))));
     }
 
     @PostMapping(WORKFLOW_STATE_EXECUTE_API_PATH)
-    public ResponseEntity<WorkflowStateExecuteResponse> apiV1WorkflowStateDecidePost(
-            final @RequestBody WorkflowStateExecuteRequest request
+    public CompletableFuture<ResponseEntity<WorkflowStateExecuteResponse>> apiV1WorkflowStateDecidePost(
+            final @RequestBody WorkflowStateExecuteRequest request, final HttpServletRequest req
     ) {
-        return ResponseEntity.ok(workerService.handleWorkflowStateExecute(request));
+        setCallbackAttributes(req, request.getWorkflowType(), request.getWorkflowStateId());
+        metrics.recordExecuteAttempt(request.getWorkflowType(), request.getWorkflowStateId(), request.getContext().getAttempt());
+        final long payloadBytes = req.getContentLengthLong();
+        return callbackExecutor.submit(request.getWorkflowType(),
+                () -> ResponseEntity.ok(metrics.recordState(WorkerMetrics.API_EXECUTE,
+                        request.getWorkflowType(), request.getWorkflowStateId(), payloadBytes,
+                        () -> workerService.handleWorkflowStateExecute(request))));
     }
 
     @PostMapping(WORKFLOW_WORKER_RPC_API_PATH)
-    public ResponseEntity<WorkflowWorkerRpcResponse> apiV1WorkflowStateDecidePost(
-            final @RequestBody WorkflowWorkerRpcRequest request
+    public CompletableFuture<ResponseEntity<WorkflowWorkerRpcResponse>> apiV1WorkflowStateDecidePost(
+            final @RequestBody WorkflowWorkerRpcRequest request, final HttpServletRequest req
     ) {
-        return ResponseEntity.ok(workerService.handleWorkflowWorkerRpc(request));
+        setCallbackAttributes(req, request.getWorkflowType(), request.getRpcName());
+        final long payloadBytes = req.getContentLengthLong();
+        return callbackExecutor.submit(request.getWorkflowType(),
+                () -> ResponseEntity.ok(metrics.recordRpc(
+                        request.getWorkflowType(), request.getRpcName(), payloadBytes,
+                        () -> workerService.handleWorkflowWorkerRpc(request))));
     }
 
     /**
      * This exception handler will return error response to iWF server so that you can debug using Cadence/Temporal history(WebUI)
+     * Non-retryable errors(see iwf.worker.error.non-retryable-types) are returned with 400, others with 500.
      *
      * @param req
      * @param ex
@@ -66,23 +100,18 @@ public class IwfWorkerApiController {
     public ResponseEntity<?> handleException(
             HttpServletRequest req, Exception ex
     ) {
-
-        StringWriter sw = new StringWriter();
-        PrintWriter pw = new PrintWriter(sw);
-        ex.printStackTrace(pw);
-        String stackTrace = sw.toString(); // stack trace as a string
-
-        ex.printStackTrace();
-        
-        final WorkerErrorResponse errResp = new WorkerErrorResponse()
-                .detail(ex.getMessage() + "; stack trace:" + stackTrace)
-                .errorType(ex.getClass().getName());
-        // TODO: you may return other status code appropriately
-        int statusCode = 500;
-        if (ex instanceof IllegalArgumentException) {
-            statusCode = 400;
-        }
+        final WorkerErrorResponse errResp = errorReporter.report(
+                (String) req.getAttribute(ATTRIBUTE_WORKFLOW_TYPE),
+                (String) req.getAttribute(ATTRIBUTE_STATE_OR_RPC),
+                ex);
+        final int statusCode = errorReporter.isRetryable(ex) ? 500 : 400;
 
         return ResponseEntity.status(statusCode).body(errResp);
     }
-}
\ No newline at end of file
+
+    // The attributes are kept across the async dispatch, so they are still available in the exception handler
+    private static void setCallbackAttributes(final HttpServletRequest req, final String workflowType, final String stateOrRpc) {
+        req.setAttribute(ATTRIBUTE_WORKFLOW_TYPE, workflowType);
+        req.setAttribute(ATTRIBUTE_STATE_OR_RPC, stateOrRpc);
+    }
+}
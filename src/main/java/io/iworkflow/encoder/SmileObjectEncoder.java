@@ -0,0 +1,134 @@
+package io.iworkflow.encoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.iworkflow.core.ObjectEncoder;
+import io.iworkflow.gen.models.EncodedObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An {@link ObjectEncoder} that encodes the large data attributes, state inputs and channel values in the binary Smile
+ * format (https://github.com/FasterXML/smile-format-specification), deflated.
+ *
+ * <p>{@link EncodedObject} can only carry a String, so binary data has to be Base64 encoded, which adds a third to its
+ * size. That outweighs what Smile saves over JSON(it mostly saves the repeated field names), so the values whose Smile
+ * is smaller than the compression threshold are written in plain JSON by the fallback encoder, and only the larger
+ * values, where deflating pays off, are written as deflated Smile. A value is always serialized as Smile first, so the
+ * large values are only serialized once, and only the small ones, which are cheap, are serialized again as JSON.
+ *
+ * <p>The encoding type tells whether the value is deflated Smile, Smile(written by an earlier version of this encoder),
+ * or anything else. Anything else(e.g. JSON) is decoded by the fallback encoder, so that workflows can migrate to this
+ * encoder.
+ */
+public class SmileObjectEncoder implements ObjectEncoder {
+    public static final String ENCODING_TYPE = "Smile";
+    public static final String ENCODING_TYPE_DEFLATED = "Smile+Deflate";
+
+    private final ObjectMapper smileMapper;
+    private final ObjectEncoder fallbackEncoder;
+    private final int compressionThresholdBytes;
+
+    /**
+     * @param objectMapper              the JSON mapper, whose modules and settings are also used for Smile
+     * @param fallbackEncoder           the JSON encoder of the values below the compression threshold and of null, and
+     *                                  the decoder of the values that are not in Smile
+     * @param compressionThresholdBytes values whose Smile is at least this size are written as deflated Smile. Zero or
+     *                                  negative to write all the values as deflated Smile.
+     */
+    public SmileObjectEncoder(final ObjectMapper objectMapper, final ObjectEncoder fallbackEncoder, final int compressionThresholdBytes) {
+        this.fallbackEncoder = fallbackEncoder;
+        this.compressionThresholdBytes = compressionThresholdBytes;
+        this.smileMapper = objectMapper.copyWith(new SmileFactory());
+    }
+
+    @Override
+    public String getEncodingType() {
+        return ENCODING_TYPE;
+    }
+
+    @Override
+    public EncodedObject encode(final Object obj) {
+        if (obj == null) {
+            return fallbackEncoder.encode(null);
+        }
+        final byte[] smile;
+        try {
+            smile = smileMapper.writeValueAsBytes(obj);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (smile.length < compressionThresholdBytes) {
+            return fallbackEncoder.encode(obj);
+        }
+        return new EncodedObject()
+                .encoding(ENCODING_TYPE_DEFLATED)
+                .data(Base64.getEncoder().encodeToString(deflate(smile)));
+    }
+
+    @Override
+    public <T> T decode(final EncodedObject encodedObject, final Class<? extends T> type) {
+        if (encodedObject == null || encodedObject.getData() == null) {
+            return fallbackEncoder.decode(encodedObject, type);
+        }
+
+        final byte[] smile;
+        if (ENCODING_TYPE.equals(encodedObject.getEncoding())) {
+            smile = Base64.getDecoder().decode(encodedObject.getData());
+        } else if (ENCODING_TYPE_DEFLATED.equals(encodedObject.getEncoding())) {
+            smile = inflate(Base64.getDecoder().decode(encodedObject.getData()));
+        } else {
+            // e.g. JSON
+            return fallbackEncoder.decode(encodedObject, type);
+        }
+
+        try {
+            return smileMapper.readValue(smile, type);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] deflate(final byte[] input) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2);
+            final byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] input) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+            final byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                final int size = inflater.inflate(buffer);
+                if (size == 0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("truncated deflated data");
+                }
+                output.write(buffer, 0, size);
+            }
+            return output.toByteArray();
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("invalid deflated data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -10,8 +10,17 @@ import io.iworkflow.patterns.workflow.intervention.ManualInterventionWorkflow;
 import io.iworkflow.patterns.workflow.parallel.JobSeeker;
 import io.iworkflow.patterns.workflow.parallel.ParallelStatesWithAwaitWorkflow;
 import io.iworkflow.patterns.workflow.parallel.SimpleParallelStatesWorkflow;
+import io.iworkflow.patterns.workflow.parentchild.ChildCompletionMode;
+import io.iworkflow.patterns.workflow.parentchild.Parallelism;
 import io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2;
+import io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2Input;
+import io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow;
 import io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ConcurrencyControl;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ParentLoad;
+import io.iworkflow.patterns.workflow.scalableparallel.models.RequestProgress;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ScalableParallelRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskPriority;
 import io.iworkflow.patterns.workflow.polling.BackoffPollingWorkflow;
 import io.iworkflow.patterns.workflow.polling.SimplePollingWorkflow;
 import io.iworkflow.patterns.workflow.recovery.FailureRecoveryWorkflow;
@@ -19,14 +28,15 @@ import io.iworkflow.patterns.workflow.recovery.ImmutableFailureRecoveryWorkflowI
 import io.iworkflow.patterns.workflow.reminders.ReminderWorkflow;
 import io.iworkflow.patterns.workflow.resettabletimer.ResettableTimerWorkflow;
 import io.iworkflow.patterns.workflow.storage.AddStorageItemRequest;
-import io.iworkflow.patterns.workflow.storage.StorageWorkflow;
+import io.iworkflow.patterns.workflow.storage.AddStorageItemsRequest;
+import io.iworkflow.patterns.workflow.storage.StorageClient;
+import io.iworkflow.patterns.workflow.storage.StorageKeysRequest;
 import io.iworkflow.patterns.workflow.timeout.HandlingTimeoutWorkflow;
 import io.iworkflow.patterns.workflow.waitforstatecompletion.ImmutableJobSeekerData;
 import io.iworkflow.patterns.workflow.waitforstatecompletion.JobSeekerData;
 import io.iworkflow.patterns.workflow.waitforstatecompletion.PersistDataState;
 import io.iworkflow.patterns.workflow.waitforstatecompletion.WaitForStateCompletionWorkflow;
 import io.iworkflow.core.Client;
-import io.iworkflow.core.RpcDefinitions;
 import io.iworkflow.core.WorkflowOptions;
 import io.iworkflow.core.exceptions.NoRunningWorkflowException;
 import org.springframework.http.ResponseEntity;
@@ -37,6 +47,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 import static io.iworkflow.patterns.workflow.drainchannels.signal.DrainSignalChannelsWorkflow.QUEUE_SIGNAL_CHANNEL;
 import static io.iworkflow.gen.models.IDReusePolicy.ALLOW_IF_PREVIOUS_EXITS_ABNORMALLY;
 
@@ -48,10 +60,15 @@ class DesignPatternController {
 
     private final Client iwfClient;
     private final ServiceDependency serviceDependency;
+    private final ObjectMapper objectMapper;
+    private final StorageClient storageClient;
 
-    public DesignPatternController(final Client iwfClient, ServiceDependency serviceDependency) {
+    public DesignPatternController(final Client iwfClient, ServiceDependency serviceDependency, final ObjectMapper objectMapper,
+                                   final StorageClient storageClient) {
         this.iwfClient = iwfClient;
         this.serviceDependency = serviceDependency;
+        this.objectMapper = objectMapper;
+        this.storageClient = storageClient;
     }
 
     @GetMapping("/polling/start/simple")
@@ -103,53 +120,38 @@ class DesignPatternController {
 
     @PostMapping("/storage/add")
     ResponseEntity<String> addStorageItem(@RequestBody AddStorageItemRequest request) {
-        final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
-        invokeStorageRpc(rpcStub::addItem, request, true);
+        storageClient.addItem(request);
         return ResponseEntity.ok("Added storage item");
     }
 
     @GetMapping("/storage/get")
-    ResponseEntity<String> getStorageItem(@RequestParam String itemKey) {
-        final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
-        final String itemValue = invokeStorageRpc(rpcStub::getItem, itemKey, true);
+    ResponseEntity<String> getStorageItem(@RequestParam String itemKey,
+                                          @RequestParam(defaultValue = "false") boolean strongConsistency) {
+        final String itemValue = storageClient.getItem(itemKey, strongConsistency);
         return ResponseEntity.ok("Item: " + itemValue);
     }
 
     @PostMapping("/storage/remove")
     ResponseEntity<String> removeStorageItem(@RequestParam String itemKey) {
-        final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
-        invokeStorageRpc(rpcStub::removeItem, itemKey, true);
+        storageClient.removeItem(itemKey);
         return ResponseEntity.ok("Removed storage item");
     }
 
-    private <I> void invokeStorageRpc(RpcDefinitions.RpcProc1<I> rpcStubMethod, I input, boolean attemptStart) {
-        try {
-            iwfClient.invokeRPC(rpcStubMethod, input);
-        } catch (final NoRunningWorkflowException e) {
-            if (attemptStart) {
-                // Start singleton workflow
-                iwfClient.startWorkflow(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId(), TIMEOUT_SECONDS, null);
-                invokeStorageRpc(rpcStubMethod, input, false);
-            } else {
-                // Rethrow the exception
-                throw e;
-            }
-        }
+    @PostMapping("/storage/add-items")
+    ResponseEntity<String> addStorageItems(@RequestBody AddStorageItemsRequest request) {
+        storageClient.addItems(request.items());
+        return ResponseEntity.ok(String.format("Added %d storage items", request.items().size()));
     }
 
-    private <I, O> O invokeStorageRpc(RpcDefinitions.RpcFunc1<I, O> rpcStubMethod, I input, boolean attemptStart) {
-        try {
-            return iwfClient.invokeRPC(rpcStubMethod, input);
-        } catch (final NoRunningWorkflowException e) {
-            if (attemptStart) {
-                // Start singleton workflow
-                iwfClient.startWorkflow(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId(), TIMEOUT_SECONDS, null);
-                return invokeStorageRpc(rpcStubMethod, input, false);
-            } else {
-                // Rethrow the exception
-                throw e;
-            }
-        }
+    @PostMapping("/storage/get-items")
+    ResponseEntity<Map<String, String>> getStorageItems(@RequestBody StorageKeysRequest request) {
+        return ResponseEntity.ok(storageClient.getItems(request.keys()));
+    }
+
+    @PostMapping("/storage/remove-items")
+    ResponseEntity<String> removeStorageItems(@RequestBody StorageKeysRequest request) {
+        storageClient.removeItems(request.keys());
+        return ResponseEntity.ok(String.format("Removed %d storage items", request.keys().size()));
     }
 
     @GetMapping("/intervention/start")
@@ -203,29 +205,91 @@ class DesignPatternController {
             // This is the workflowId of the RequestReceiverWorkflow to process this dummy batch request
             @RequestParam String workflowId,
             // This is a dummy input specifying how many requests should be sent(each will be processed in a childWorkflow) -- could be a list of Objects passed in @RequestBody in a real scenario
-            @RequestParam int numOfChildWfs) {
-
+            @RequestParam int numOfChildWfs,
+            // The limits of this request, see ScalableParallelRequest
+            @RequestParam(defaultValue = "" + ParentWorkflow.NUM_PARENT_WORKFLOWS) int numParentWorkflows,
+            // The lane of the tasks in the parents: HIGH, NORMAL or LOW
+            @RequestParam(defaultValue = "NORMAL") TaskPriority priority,
+            // 0 for the default of the priority
+            @RequestParam(defaultValue = "0") int maxBufferedTaskRanges,
+            @RequestParam(defaultValue = "" + ParentWorkflow.CONCURRENCY_PER_PARENT_WORKFLOW) int concurrencyPerParent,
+            // With adaptive=true, the concurrency of a parent starts at concurrencyPerParent, and is adjusted between 1 and maxConcurrencyPerParent
+            @RequestParam(defaultValue = "false") boolean adaptive,
+            @RequestParam(defaultValue = "90") int maxConcurrencyPerParent,
+            @RequestParam(defaultValue = "60000") long latencyTargetMillis) {
+
+        final ConcurrencyControl concurrencyControl = adaptive
+                ? new ConcurrencyControl(true, concurrencyPerParent, 1, maxConcurrencyPerParent, latencyTargetMillis)
+                : ConcurrencyControl.fixed(concurrencyPerParent);
+        // No timeout, as it keeps running until all the tasks are completed, to track the progress
         iwfClient.startWorkflow(
-                RequestReceiverWorkflow.class, workflowId, 3600, numOfChildWfs,
+                RequestReceiverWorkflow.class, workflowId, 0,
+                new ScalableParallelRequest(numOfChildWfs, numParentWorkflows, priority, maxBufferedTaskRanges, concurrencyControl),
                 WorkflowOptions.basicBuilder().workflowIdReusePolicy(ALLOW_IF_PREVIOUS_EXITS_ABNORMALLY).build());
 
         return ResponseEntity.ok("success");
     }
 
+    @GetMapping("scalableparallel/progress")
+    ResponseEntity<RequestProgress> getScalableParallelProgress(@RequestParam String workflowId) {
+        final RequestReceiverWorkflow rpcStub = iwfClient.newRpcStub(RequestReceiverWorkflow.class, workflowId);
+        try {
+            return ResponseEntity.ok(iwfClient.invokeRPC(rpcStub::getProgress));
+        } catch (final NoRunningWorkflowException e) {
+            // completed, with the final progress as the output
+            return ResponseEntity.ok(iwfClient.getSimpleWorkflowResultWithWait(RequestProgress.class, workflowId));
+        }
+    }
+
+    @GetMapping("scalableparallel/load")
+    ResponseEntity<ParentLoad> getScalableParallelLoad(@RequestParam String parentWorkflowId) {
+        final ParentWorkflow rpcStub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
+        return ResponseEntity.ok(iwfClient.invokeRPC(rpcStub::getLoad));
+    }
+
+    @GetMapping("scalableparallel/concurrency")
+    ResponseEntity<ConcurrencyControl> getScalableParallelConcurrency(@RequestParam String parentWorkflowId) {
+        final ParentWorkflow rpcStub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
+        return ResponseEntity.ok(iwfClient.invokeRPC(rpcStub::getConcurrencyControl));
+    }
+
+    @PostMapping("scalableparallel/concurrency")
+    ResponseEntity<String> updateScalableParallelConcurrency(@RequestParam String parentWorkflowId,
+                                                             @RequestBody ConcurrencyControl concurrencyControl) {
+        final ParentWorkflow rpcStub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
+        iwfClient.invokeRPC(rpcStub::updateConcurrencyControl, concurrencyControl);
+        return ResponseEntity.ok("success");
+    }
+
     @GetMapping("parentchild/start")
     ResponseEntity<String> parentchild(
             // This is the workflowId of the ParentWorkflowV2 to process this dummy batch request
             @RequestParam String workflowId,
             // This is a dummy input specifying how many requests should be sent(each will be processed in a childWorkflow) -- could be a list of Objects passed in @RequestBody in a real scenario
-            @RequestParam int numOfChildWfs) {
+            @RequestParam int numOfChildWfs,
+            // POLLING: the parent polls for the completion of each child; NOTIFICATION: each child notifies the parent
+            @RequestParam(defaultValue = "POLLING") ChildCompletionMode childCompletionMode) {
 
         iwfClient.startWorkflow(
-                ParentWorkflowV2.class, workflowId, 3600, numOfChildWfs,
+                ParentWorkflowV2.class, workflowId, 3600, new ParentWorkflowV2Input(numOfChildWfs, childCompletionMode),
                 WorkflowOptions.basicBuilder().workflowIdReusePolicy(ALLOW_IF_PREVIOUS_EXITS_ABNORMALLY).build());
 
         return ResponseEntity.ok("success");
     }
 
+    @GetMapping("parentchild/parallelism")
+    ResponseEntity<Parallelism> getParentChildParallelism(@RequestParam String workflowId) {
+        final ParentWorkflowV2 rpcStub = iwfClient.newRpcStub(ParentWorkflowV2.class, workflowId);
+        return ResponseEntity.ok(iwfClient.invokeRPC(rpcStub::getParallelism));
+    }
+
+    @PostMapping("parentchild/parallelism")
+    ResponseEntity<Parallelism> setParentChildParallelism(@RequestParam String workflowId,
+                                                          @RequestParam int parallelism) {
+        final ParentWorkflowV2 rpcStub = iwfClient.newRpcStub(ParentWorkflowV2.class, workflowId);
+        return ResponseEntity.ok(iwfClient.invokeRPC(rpcStub::setParallelism, parallelism));
+    }
+
     @GetMapping("/drainchannels/internal/start")
     ResponseEntity<String> startDrainInternalChannels(@RequestParam final String workflowId) {
         final String runId = iwfClient.startWorkflow(DrainInternalChannelsWorkflow.class, workflowId, 3600);
@@ -249,7 +313,6 @@ class DesignPatternController {
     ResponseEntity<String> startWaitForStateCompletion(
             @RequestParam final String workflowId
     ) throws JsonProcessingException {
-        final ObjectMapper objectMapper = new ObjectMapper();
         final JobSeekerData data = ImmutableJobSeekerData.builder()
                         .id(1)
                         .build();
@@ -4,10 +4,17 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class ServiceDependency {
+    private final ObjectMapper objectMapper;
     private int readExternalCounter = 0;
 
+    public ServiceDependency(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
     /**
      * Attempts to call an external API with the provided message.
      *
@@ -47,8 +54,12 @@ public class ServiceDependency {
     }
 
     public void upsert(final Object document) throws JsonProcessingException {
-        final ObjectMapper objectMapper = new ObjectMapper();
         final String serializedObject = objectMapper.writeValueAsString(document);
         System.out.printf("upsert: %s %n", serializedObject);
     }
+
+    public void bulkUpsert(final List<?> documents) throws JsonProcessingException {
+        final String serializedObjects = objectMapper.writeValueAsString(documents);
+        System.out.printf("bulk upsert %d documents: %s %n", documents.size(), serializedObjects);
+    }
 }
@@ -9,7 +9,9 @@ import io.iworkflow.core.StateDef;
 import io.iworkflow.core.StateMovement;
 import io.iworkflow.core.WorkflowState;
 import io.iworkflow.core.command.CommandRequest;
+import io.iworkflow.core.command.BaseCommand;
 import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.command.TimerCommand;
 import io.iworkflow.core.communication.Communication;
 import io.iworkflow.core.communication.CommunicationMethodDef;
 import io.iworkflow.core.communication.InternalChannelCommand;
@@ -20,14 +22,24 @@ import io.iworkflow.core.persistence.Persistence;
 import io.iworkflow.core.persistence.PersistenceFieldDef;
 import io.iworkflow.gen.models.ChannelRequestStatus;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class DrainInternalChannelsWorkflow implements ObjectWorkflow {
     final static String UPSERT_MONGO_DATA_INTERNAL_CHANNEL = "upsert_mongo_data_internal_channel";
     final static String PROCESS_DATA_STATE_EXECUTION_COUNTER = "process_data_state_execution_counter";
 
+    // UpsertMongoRecordState wakes up for this number of documents, or for the documents received within the window.
+    // The window is armed when the state starts waiting, not at the first document, so a document arriving after an idle
+    // window is upserted on its own
+    final static int MAX_DOCUMENTS_PER_UPSERT = 20;
+    final static Duration UPSERT_BATCH_WINDOW = Duration.ofSeconds(1);
+
     final ServiceDependency externalService;
     final ServiceDependency mongoCollection;
 
@@ -125,6 +137,9 @@ class InitState implements WorkflowState<String> {
  * The {@code UpsertMongoRecordState} class represents a state that upserts a record into a MongoDB collection.
  */
 class UpsertMongoRecordState implements WorkflowState<Void> {
+    private static final String COMMAND_ID_DOCUMENT_PREFIX = "Document_";
+    private static final String COMMAND_ID_BATCH_WINDOW = "BatchWindow";
+
     final ServiceDependency mongoCollection;
 
     /**
@@ -147,7 +162,9 @@ class UpsertMongoRecordState implements WorkflowState<Void> {
     }
 
     /**
-     * Waits for a command in the UPSERT_MONGO_DATA_INTERNAL_CHANNEL before executing the state logic.
+     * Waits for a batch of commands in the UPSERT_MONGO_DATA_INTERNAL_CHANNEL before executing the state logic:
+     * MAX_DOCUMENTS_PER_UPSERT of them, or at least one and the UPSERT_BATCH_WINDOW is over.
+     * Each channel command receives one document.
      *
      * @param context the workflow context.
      * @param input the input data for the state.
@@ -157,15 +174,25 @@ class UpsertMongoRecordState implements WorkflowState<Void> {
      */
     @Override
     public CommandRequest waitUntil(final Context context, final Void input, final Persistence persistence, final Communication communication) {
-        return CommandRequest.forAnyCommandCompleted(
-                InternalChannelCommand.create(DrainInternalChannelsWorkflow.UPSERT_MONGO_DATA_INTERNAL_CHANNEL)
-        );
+        final List<BaseCommand> commands = new ArrayList<>();
+        final List<String> fullBatch = new ArrayList<>();
+        for (int i = 0; i < DrainInternalChannelsWorkflow.MAX_DOCUMENTS_PER_UPSERT; i++) {
+            final String commandId = COMMAND_ID_DOCUMENT_PREFIX + i;
+            commands.add(InternalChannelCommand.create(commandId, DrainInternalChannelsWorkflow.UPSERT_MONGO_DATA_INTERNAL_CHANNEL));
+            fullBatch.add(commandId);
+        }
+        commands.add(TimerCommand.createByDuration(COMMAND_ID_BATCH_WINDOW, DrainInternalChannelsWorkflow.UPSERT_BATCH_WINDOW));
+
+        return CommandRequest.forAnyCommandCombinationCompleted(
+                List.of(fullBatch, List.of(COMMAND_ID_BATCH_WINDOW, fullBatch.get(0))),
+                commands.toArray(new BaseCommand[0]));
     }
 
     /**
      * Executes the state logic and returns the next state decisions.
-     * Gets a command from UPSERT_MONGO_DATA_INTERNAL_CHANNEL and mock upserts to a mongo collection.
-     * If message is the final command then it gracefully completes (waits for other threads to close),
+     * Gets the received commands from UPSERT_MONGO_DATA_INTERNAL_CHANNEL and mock upserts them to a mongo collection
+     * in bulk, with only the last status of each document.
+     * If the final command is received then it gracefully completes (waits for other threads to close),
      * else loops this state.
      *
      * @param context the workflow context.
@@ -178,31 +205,38 @@ class UpsertMongoRecordState implements WorkflowState<Void> {
      */
     @Override
     public StateDecision execute(final Context context, final Void input, final CommandResults commandResults, final Persistence persistence, final Communication communication) {
-        final Optional<InternalChannelCommandResult> result = commandResults.getAllInternalChannelCommandResult()
-                .stream()
-                .filter(r -> r.getRequestStatusEnum().equals(ChannelRequestStatus.RECEIVED))
-                .findFirst();
-
-        if(result.isEmpty()) {
-            throw new IllegalStateException("No document was sent");
+        // The documents by id, in the order of their last updates, so that only the last status of a document is written
+        final Map<String, MongoDocument> documents = new LinkedHashMap<>();
+        boolean finalCommandReceived = false;
+        for (final InternalChannelCommandResult result : commandResults.getAllInternalChannelCommandResult()) {
+            if (!result.getRequestStatusEnum().equals(ChannelRequestStatus.RECEIVED)) {
+                continue;
+            }
+            final Optional<Object> data = result.getValue();
+            if (data.isEmpty()) {
+                throw new IllegalStateException("No data was sent");
+            }
+            final MongoDocument document = (MongoDocument) data.get();
+            documents.remove(document.getId());
+            documents.put(document.getId(), document);
+            finalCommandReceived |= document.isFinalCommand();
         }
 
-        final Optional<Object> data = result.get().getValue();
-
-        if (data.isEmpty()) {
-            throw new IllegalStateException("No data was sent");
+        if (documents.isEmpty()) {
+            throw new IllegalStateException("No document was sent");
         }
 
-        final MongoDocument document = (MongoDocument) data.get();
         try {
-            mongoCollection.upsert(document);
+            mongoCollection.bulkUpsert(new ArrayList<>(documents.values()));
         } catch (final JsonProcessingException e) {
             throw new RuntimeException(e);
         }
 
         //This is the crux of this pattern. This state recognizes that the final message has been upserted,
         // allowing the workflow to be closed without any data loss.
-        if (document.isFinalCommand()) {
+        // The channel is FIFO and the final message is the last one published, so all the messages before it are in
+        // this batch or the previous ones.
+        if (finalCommandReceived) {
             return StateDecision.gracefulCompleteWorkflow();
         } else {
             return StateDecision.singleNextState(UpsertMongoRecordState.class);
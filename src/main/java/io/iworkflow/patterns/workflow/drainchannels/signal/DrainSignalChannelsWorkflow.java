@@ -5,6 +5,7 @@ import io.iworkflow.core.ObjectWorkflow;
 import io.iworkflow.core.StateDecision;
 import io.iworkflow.core.StateDef;
 import io.iworkflow.core.WorkflowState;
+import io.iworkflow.core.command.BaseCommand;
 import io.iworkflow.core.command.CommandRequest;
 import io.iworkflow.core.command.CommandResults;
 import io.iworkflow.core.command.TimerCommand;
@@ -17,6 +18,7 @@ import io.iworkflow.core.persistence.Persistence;
 import io.iworkflow.gen.models.ChannelRequestStatus;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -24,6 +26,27 @@ import java.util.Optional;
 public class DrainSignalChannelsWorkflow implements ObjectWorkflow {
     final public static String QUEUE_SIGNAL_CHANNEL = "queueSignalChannel";
 
+    // Waits for more signals after processing a batch, before checking if the channel is empty
+    final static Duration WAIT_FOR_MORE_SIGNALS = Duration.ofSeconds(20);
+    // A batch of less than the max number of signals is processed after this window. The window is armed when the state
+    // starts waiting, not at the first signal, so a signal arriving after an idle window is processed on its own
+    final static Duration SIGNAL_BATCH_WINDOW = Duration.ofSeconds(1);
+
+    private final List<StateDef> stateDefs;
+
+    /**
+     * @param maxSignalsPerBatch the max number of signals that ProcessSignalState processes in one execution
+     */
+    public DrainSignalChannelsWorkflow(final int maxSignalsPerBatch) {
+        if (maxSignalsPerBatch < 1) {
+            throw new IllegalArgumentException("maxSignalsPerBatch must be at least 1");
+        }
+        this.stateDefs = Arrays.asList(
+                StateDef.startingState(new ProcessSignalState(maxSignalsPerBatch)),
+                StateDef.nonStartingState(new WaitForMoreSignalsState())
+        );
+    }
+
     /**
      * Returns the list of states in the workflow.
      *
@@ -31,9 +54,7 @@ public class DrainSignalChannelsWorkflow implements ObjectWorkflow {
      */
     @Override
     public List<StateDef> getWorkflowStates() {
-        return Arrays.asList(
-                StateDef.startingState(new ProcessSignalState())
-        );
+        return stateDefs;
     }
 
     /**
@@ -50,9 +71,17 @@ public class DrainSignalChannelsWorkflow implements ObjectWorkflow {
 }
 
 /**
- * This state processes the signals
+ * This state processes the signals in batches
  */
 class ProcessSignalState implements WorkflowState<String> {
+    private static final String COMMAND_ID_SIGNAL_PREFIX = "Signal_";
+    private static final String COMMAND_ID_BATCH_WINDOW = "BatchWindow";
+
+    private final int maxSignalsPerBatch;
+
+    public ProcessSignalState(final int maxSignalsPerBatch) {
+        this.maxSignalsPerBatch = maxSignalsPerBatch;
+    }
 
     /**
      * Returns the input type for this state.
@@ -65,67 +94,96 @@ class ProcessSignalState implements WorkflowState<String> {
     }
 
     /**
-     * Defines the command request to wait for a signal to be received.
+     * Defines the command request to wait for a batch of signals to be received.
+     * Each signal command receives one signal, so the signals already buffered in the channel are all received at once,
+     * up to maxSignalsPerBatch. If there are fewer, the batch is completed after the SIGNAL_BATCH_WINDOW.
      *
      * @param context       the workflow context.
      * @param input         the input for the state.
      * @param persistence   the persistence layer.
      * @param communication the communication layer.
-     * @return a CommandRequest object to wait for a signal on the QUEUE_SIGNAL_CHANNEL.
+     * @return a CommandRequest object to wait for signals on the QUEUE_SIGNAL_CHANNEL.
      */
     @Override
     public CommandRequest waitUntil(final Context context, final String input, final Persistence persistence, final Communication communication) {
         //The first "message" we receive is through the input when the workflow is started (see the controller).
         //If the input is null it is not the first message and we need to wait for messages in the channel.
-        if (input == null) {
-            return CommandRequest.forAnyCommandCompleted(
-                    SignalCommand.create(DrainSignalChannelsWorkflow.QUEUE_SIGNAL_CHANNEL));
+        if (input != null) {
+            return CommandRequest.empty;
         }
-        return CommandRequest.empty;
+        final List<BaseCommand> commands = new ArrayList<>();
+        final List<String> fullBatch = new ArrayList<>();
+        for (int i = 0; i < maxSignalsPerBatch; i++) {
+            final String commandId = COMMAND_ID_SIGNAL_PREFIX + i;
+            commands.add(SignalCommand.create(commandId, DrainSignalChannelsWorkflow.QUEUE_SIGNAL_CHANNEL));
+            fullBatch.add(commandId);
+        }
+        commands.add(TimerCommand.createByDuration(COMMAND_ID_BATCH_WINDOW, DrainSignalChannelsWorkflow.SIGNAL_BATCH_WINDOW));
+
+        return CommandRequest.forAnyCommandCombinationCompleted(
+                List.of(fullBatch, List.of(COMMAND_ID_BATCH_WINDOW, fullBatch.get(0))),
+                commands.toArray(new BaseCommand[0]));
     }
 
     /**
-     * If the signal channel is not empty it loops this state. If the channel is empty the workflow closes.
+     * Processes the batch of signals, then waits for more signals in WaitForMoreSignalsState.
      *
      * @param context        the workflow context.
      * @param input          the input for the state.
      * @param commandResults the results of the command requests.
      * @param persistence    the persistence layer.
      * @param communication  the communication layer.
-     * @return a StateDecision object to either complete the workflow or continue processing signals.
+     * @return a StateDecision object to wait for more signals.
      * @throws IllegalStateException if no signal request or value is found.
      */
     @Override
     public StateDecision execute(final Context context, final String input, final CommandResults commandResults, final Persistence persistence, final Communication communication) {
+        final List<String> values = new ArrayList<>();
         if (input != null) {
-            System.out.println("DrainSignalChannelsWorkflow process signal value: " + input);
+            values.add(input);
         } else {
-
-            final Optional<SignalCommandResult> result = commandResults.getAllSignalCommandResults().stream()
-                    .filter(r -> r.getSignalRequestStatusEnum().equals(ChannelRequestStatus.RECEIVED))
-                    .findFirst();
-            if (result.isEmpty()) {
+            for (final SignalCommandResult result : commandResults.getAllSignalCommandResults()) {
+                if (!result.getSignalRequestStatusEnum().equals(ChannelRequestStatus.RECEIVED)) {
+                    continue;
+                }
+                final Optional<Object> data = result.getSignalValue();
+                if (data.isEmpty()) {
+                    throw new IllegalStateException("No signal value found");
+                }
+                values.add((String) data.get());
+            }
+            if (values.isEmpty()) {
                 throw new IllegalStateException("No signal request found");
             }
+        }
 
-            final Optional<Object> data = result.get().getSignalValue();
+        System.out.println("DrainSignalChannelsWorkflow process " + values.size() + " signal values: " + values);
 
-            if (data.isEmpty()) {
-                throw new IllegalStateException("No signal value found");
-            }
+        return StateDecision.singleNextState(WaitForMoreSignalsState.class);
+    }
+}
 
-            final String value = (String) data.get();
-            System.out.println("DrainSignalChannelsWorkflow process signal value: " + value);
-        }
+/**
+ * This state waits on a durable timer for more signals, and then completes the workflow if the channel is empty
+ */
+class WaitForMoreSignalsState implements WorkflowState<Void> {
 
-        try {
-            //sleep for 20s to add more signals.
-            Thread.sleep(20000);
-        } catch (final InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+    @Override
+    public Class<Void> getInputType() {
+        return Void.class;
+    }
 
-        //To use this feature, QUEUE_SIGNAL_CHANNEL can only be consumed by one workflow state.
+    @Override
+    public CommandRequest waitUntil(final Context context, final Void input, final Persistence persistence, final Communication communication) {
+        //wait for 20s to add more signals, without holding a worker thread.
+        return CommandRequest.forAllCommandCompleted(
+                TimerCommand.createByDuration(DrainSignalChannelsWorkflow.WAIT_FOR_MORE_SIGNALS));
+    }
+
+    @Override
+    public StateDecision execute(final Context context, final Void input, final CommandResults commandResults, final Persistence persistence, final Communication communication) {
+        //To use this feature, QUEUE_SIGNAL_CHANNEL can only be consumed by one workflow state, which is ProcessSignalState.
+        //This state only checks the channel, so the check is still atomic.
         return StateDecision.forceCompleteIfSignalChannelEmptyOrElse(DrainSignalChannelsWorkflow.QUEUE_SIGNAL_CHANNEL, ProcessSignalState.class);
     }
 }
@@ -0,0 +1,13 @@
+package io.iworkflow.patterns.workflow.parentchild;
+
+/**
+ * How ParentWorkflowV2 learns that a child workflow is completed
+ */
+public enum ChildCompletionMode {
+    // The parent waits for the child via iwfClient.waitForWorkflowCompletion, with a timer as backoff between the long polls
+    // The child doesn't need to know the parent, so it works for MtoM parents and children
+    POLLING,
+    // The child notifies the parent on completion, and the parent waits on the notification with a timer as fallback
+    // Only the parent that started the child is notified
+    NOTIFICATION
+}
@@ -0,0 +1,87 @@
+package io.iworkflow.patterns.workflow.parentchild;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.Context;
+import io.iworkflow.core.ObjectWorkflow;
+import io.iworkflow.core.StateDecision;
+import io.iworkflow.core.StateDef;
+import io.iworkflow.core.WorkflowState;
+import io.iworkflow.core.command.CommandRequest;
+import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.command.TimerCommand;
+import io.iworkflow.core.communication.Communication;
+import io.iworkflow.core.exceptions.NoRunningWorkflowException;
+import io.iworkflow.core.persistence.DataAttributeDef;
+import io.iworkflow.core.persistence.Persistence;
+import io.iworkflow.core.persistence.PersistenceFieldDef;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A workflow of processing a request of ParentWorkflowV2.
+ * It notifies the parent on completion only if the parent is set, see ChildCompletionMode
+ */
+public class ChildWorkflowV2 implements ObjectWorkflow {
+
+    public static final String PARENT_WORKFLOW_ID = "ParentWorkflowId";
+
+    private final List<StateDef> stateDefs;
+
+    public ChildWorkflowV2(final Client iwfClient) {
+        this.stateDefs = List.of(
+                StateDef.startingState(new ProcessRequestState(iwfClient))
+        );
+    }
+
+    @Override
+    public List<PersistenceFieldDef> getPersistenceSchema() {
+        return List.of(
+                DataAttributeDef.create(String.class, PARENT_WORKFLOW_ID)
+        );
+    }
+
+    @Override
+    public List<StateDef> getWorkflowStates() {
+        return stateDefs;
+    }
+}
+
+class ProcessRequestState implements WorkflowState<String> {
+
+    private final Client iwfClient;
+
+    public ProcessRequestState(final Client iwfClient) {
+        this.iwfClient = iwfClient;
+    }
+
+    @Override
+    public Class<String> getInputType() {
+        return String.class;
+    }
+
+    @Override
+    public CommandRequest waitUntil(final Context context, final String input, final Persistence persistence, final Communication communication) {
+        final int random = new Random().nextInt(60);
+        return CommandRequest.forAnyCommandCompleted(
+                // Timer to simulate a long running process
+                TimerCommand.createByDuration(Duration.ofSeconds(random))
+        );
+    }
+
+    @Override
+    public StateDecision execute(final Context context, final String input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+        // Set by the parent as initial data attribute in the NOTIFICATION mode
+        final String parentWorkflowId = persistence.getDataAttribute(ChildWorkflowV2.PARENT_WORKFLOW_ID, String.class);
+        if (parentWorkflowId != null) {
+            final ParentWorkflowV2 stub = iwfClient.newRpcStub(ParentWorkflowV2.class, parentWorkflowId);
+            try {
+                iwfClient.invokeRPC(stub::notifyChildCompletion, context.getWorkflowId());
+            } catch (NoRunningWorkflowException e) {
+                System.out.println("Parent workflow may have completed, might be duplicate completion notification, ignore it.");
+            }
+        }
+        return StateDecision.gracefulCompleteWorkflow();
+    }
+}
@@ -0,0 +1,13 @@
+package io.iworkflow.patterns.workflow.parentchild;
+
+/**
+ * The parallelism of ParentWorkflowV2
+ * @param targetParallelism the number of LoopForNextTaskState threads to run
+ * @param retiringThreads   the number of threads asked to stop that haven't yet, each stops after its current child.
+ *                          Returned by setParallelism, the number of threads asked to stop by that call.
+ */
+public record Parallelism(
+        int targetParallelism,
+        int retiringThreads
+) {
+}
@@ -1,6 +1,5 @@
 package io.iworkflow.patterns.workflow.parentchild;
 
-import io.iworkflow.patterns.workflow.scalableparallel.ChildWorkflow;
 import io.iworkflow.core.*;
 import io.iworkflow.core.command.CommandRequest;
 import io.iworkflow.core.command.CommandResults;
@@ -8,15 +7,22 @@ import io.iworkflow.core.command.TimerCommand;
 import io.iworkflow.core.communication.Communication;
 import io.iworkflow.core.communication.CommunicationMethodDef;
 import io.iworkflow.core.communication.InternalChannelCommand;
+import io.iworkflow.core.communication.InternalChannelCommandResult;
 import io.iworkflow.core.communication.InternalChannelDef;
 import io.iworkflow.core.exceptions.LongPollTimeoutException;
 import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.iworkflow.core.persistence.DataAttributeDef;
 import io.iworkflow.core.persistence.Persistence;
+import io.iworkflow.core.persistence.PersistenceFieldDef;
+import io.iworkflow.gen.models.ChannelRequestStatus;
+import io.iworkflow.gen.models.PersistenceLoadingType;
+import io.iworkflow.gen.models.WorkflowAlreadyStartedOptions;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.TASK_QUEUE;
 
@@ -25,17 +31,42 @@ import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.TASK_Q
  */
 public class ParentWorkflowV2 implements ObjectWorkflow {
 
-    // The number of parallel child workflows that each parent workflow can control
-    // Recommended to be less than 90
+    // The initial number of parallel child workflows that each parent workflow can control, see setParallelism
     public static final int CONCURRENCY_PER_PARENT_WORKFLOW = 3;
+    // Recommended to be less than 90
+    public static final int MAX_PARALLELISM = 90;
 
     public static final String TASK_QUEUE = "task_queue";
+    // Published when the task_queue runs low, to wake up FeedTaskQueueState
+    public static final String REFILL_TASK_QUEUE = "refill_task_queue";
+    public static final String DA_NUM_REQUESTS = "NumRequests";
+    // Each message stops one LoopForNextTaskState thread, to scale down
+    public static final String RETIRE_THREAD = "retire_thread";
+    public static final String DA_PARALLELISM = "Parallelism";
+
+    // The task_queue is fed lazily, up to this number of tasks, so that the payload of a state execution and the history
+    // stay the same for any number of requests
+    public static final int TASK_QUEUE_CHUNK_SIZE = 100;
+    // The number of tasks published to the task_queue so far, which is also the next request to publish. Only written by
+    // InitState and FeedTaskQueueState, one at a time
+    public static final String DA_TASKS_FED = "TasksFed";
+    // The number of tasks taken from the task_queue so far. The requests are published in order, so a thread taking
+    // request N knows that at least N + 1 tasks are taken; the attribute keeps the highest of them
+    public static final String DA_TASKS_TAKEN = "TasksTaken";
+    // The channel of each child workflow to notify its completion, named by the prefix + child workflow id
+    public static final String CHILD_COMPLETED_CHANNEL_PREFIX = "child_completed_";
+    public static final String DA_CHILD_COMPLETION_MODE = "ChildCompletionMode";
+
+    // In the NOTIFICATION mode, the parent checks the child via the client API if not notified within this timeout,
+    // in case the notification is lost, e.g. the child is started by another parent
+    public static final Duration CHILD_COMPLETION_FALLBACK_TIMEOUT = Duration.ofMinutes(2);
 
     private final List<StateDef> stateDefs;
 
     public ParentWorkflowV2(final Client iwfClient) {
         this.stateDefs = Arrays.asList(
                 StateDef.startingState(new InitState()),
+                StateDef.nonStartingState(new FeedTaskQueueState()),
                 StateDef.nonStartingState(new LoopForNextTaskState()),
                 StateDef.nonStartingState(new StartChildWorkflowState(iwfClient)),
                 StateDef.nonStartingState(new AwaitChildWorkflowCompletionState(iwfClient))
@@ -47,37 +78,170 @@ public class ParentWorkflowV2 implements ObjectWorkflow {
         return stateDefs;
     }
 
+    @Override
+    public List<PersistenceFieldDef> getPersistenceSchema() {
+        return Arrays.asList(
+                DataAttributeDef.create(ChildCompletionMode.class, DA_CHILD_COMPLETION_MODE),
+                DataAttributeDef.create(Integer.class, DA_NUM_REQUESTS),
+                DataAttributeDef.create(Integer.class, DA_PARALLELISM),
+                DataAttributeDef.create(Integer.class, DA_TASKS_FED),
+                DataAttributeDef.create(Integer.class, DA_TASKS_TAKEN)
+        );
+    }
+
     @Override
     public List<CommunicationMethodDef> getCommunicationSchema() {
         return Arrays.asList(
-                InternalChannelDef.create(Integer.class, TASK_QUEUE)
+                InternalChannelDef.create(Integer.class, TASK_QUEUE),
+                InternalChannelDef.create(Void.class, REFILL_TASK_QUEUE),
+                InternalChannelDef.create(Void.class, RETIRE_THREAD),
+                InternalChannelDef.createByPrefix(Void.class, CHILD_COMPLETED_CHANNEL_PREFIX)
         );
     }
+
+    /**
+     * Scales the number of LoopForNextTaskState threads, e.g. to throttle during an incident of a downstream service.
+     * New threads are started right away. The surplus threads stop gracefully: each stops when it's back to take the
+     * next task, so the in-flight children are still waited for.
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_PARALLELISM})
+    public Parallelism setParallelism(Context context, Integer parallelism, Persistence persistence, Communication communication) {
+        if (parallelism == null || parallelism < 0 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("parallelism must be between 0 and " + MAX_PARALLELISM);
+        }
+        // Before InitState, the threads to be started by InitState are counted, which don't overwrite the attribute
+        final int current = getParallelism(persistence);
+        for (int i = current; i < parallelism; i++) {
+            communication.triggerStateMovements(StateMovement.create(LoopForNextTaskState.class));
+        }
+        int retiringThreads = 0;
+        for (int i = parallelism; i < current; i++) {
+            communication.publishInternalChannel(RETIRE_THREAD, null);
+            retiringThreads++;
+        }
+        persistence.setDataAttribute(DA_PARALLELISM, parallelism);
+        return new Parallelism(parallelism, retiringThreads);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_PARALLELISM})
+    public Parallelism getParallelism(Context context, Persistence persistence, Communication communication) {
+        return new Parallelism(getParallelism(persistence), communication.getInternalChannelSize(RETIRE_THREAD));
+    }
+
+    /**
+     * @return the target parallelism, which is the initial one until set by InitState or setParallelism
+     */
+    static int getParallelism(final Persistence persistence) {
+        final Integer parallelism = persistence.getDataAttribute(DA_PARALLELISM, Integer.class);
+        return parallelism == null ? CONCURRENCY_PER_PARENT_WORKFLOW : parallelism;
+    }
+
+    /**
+     * A thread asks for a refill when it leaves at most this number of tasks in the task_queue, so that each of the other
+     * threads still has a task to take while it's refilled
+     */
+    static int getTaskQueueLowWatermark(final int parallelism) {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of tasks in the task_queue, as tracked by the data attributes
+     */
+    static int getTaskQueueSize(final Persistence persistence) {
+        return getCount(persistence, DA_TASKS_FED) - getCount(persistence, DA_TASKS_TAKEN);
+    }
+
+    static int getCount(final Persistence persistence, final String key) {
+        final Integer count = persistence.getDataAttribute(key, Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Called by a child workflow on completion in the NOTIFICATION mode, which wakes up the state waiting for it.
+     * A notification sent again after a network timeout is left in the channel, which is not waited for again.
+     */
+    @RPC
+    public void notifyChildCompletion(Context context, String childWorkflowId, Communication communication) {
+        communication.publishInternalChannel(CHILD_COMPLETED_CHANNEL_PREFIX + childWorkflowId, null);
+    }
 }
 
-class InitState implements WorkflowState<Integer> {
+class InitState implements WorkflowState<ParentWorkflowV2Input> {
 
     @Override
-    public Class<Integer> getInputType() {
-        return Integer.class;
+    public Class<ParentWorkflowV2Input> getInputType() {
+        return ParentWorkflowV2Input.class;
     }
 
     @Override
-    public StateDecision execute(final Context context, final Integer numRequests, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+    public StateDecision execute(final Context context, final ParentWorkflowV2Input input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
 
-        for(int index = 0; index < numRequests; index++) {
-            communication.publishInternalChannel(ParentWorkflowV2.TASK_QUEUE, index);
+        persistence.setDataAttribute(ParentWorkflowV2.DA_CHILD_COMPLETION_MODE, input.childCompletionMode());
+        persistence.setDataAttribute(ParentWorkflowV2.DA_NUM_REQUESTS, input.numRequests());
+        if (persistence.getDataAttribute(ParentWorkflowV2.DA_PARALLELISM, Integer.class) == null) {
+            // Otherwise already set by setParallelism, which counted the threads started here
+            persistence.setDataAttribute(ParentWorkflowV2.DA_PARALLELISM, ParentWorkflowV2.CONCURRENCY_PER_PARENT_WORKFLOW);
         }
+        // Only the first chunk of the requests, the rest is fed by FeedTaskQueueState
+        final int nextRequest = FeedTaskQueueState.publishTasks(communication, 0,
+                Math.min(input.numRequests(), ParentWorkflowV2.TASK_QUEUE_CHUNK_SIZE));
+        persistence.setDataAttribute(ParentWorkflowV2.DA_TASKS_FED, nextRequest);
+        persistence.setDataAttribute(ParentWorkflowV2.DA_TASKS_TAKEN, 0);
 
         List<StateMovement> movements = new ArrayList<>();
         for (int i = 0; i < ParentWorkflowV2.CONCURRENCY_PER_PARENT_WORKFLOW; i++) {
             movements.add(StateMovement.create(LoopForNextTaskState.class));
         }
+        if (nextRequest < input.numRequests()) {
+            movements.add(StateMovement.create(FeedTaskQueueState.class, nextRequest));
+        }
         // Start all the concurrent threads
         return StateDecision.multiNextStates(movements);
     }
 }
 
+/**
+ * The single thread feeding the task_queue, with the next request to publish as the input.
+ * Being the only one that moves the cursor, the requests are published exactly once without locking.
+ */
+class FeedTaskQueueState implements WorkflowState<Integer> {
+
+    @Override
+    public Class<Integer> getInputType() {
+        return Integer.class;
+    }
+
+    @Override
+    public CommandRequest waitUntil(final Context context, final Integer nextRequest, final Persistence persistence, final Communication communication) {
+        return CommandRequest.forAnyCommandCompleted(
+                InternalChannelCommand.create(ParentWorkflowV2.REFILL_TASK_QUEUE)
+        );
+    }
+
+    @Override
+    public StateDecision execute(final Context context, final Integer nextRequest, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+        final int numRequests = persistence.getDataAttribute(ParentWorkflowV2.DA_NUM_REQUESTS, Integer.class);
+        // Tops up to a chunk, so that a refill asked by several threads at the same time doesn't overfill the queue
+        final int numTasks = ParentWorkflowV2.TASK_QUEUE_CHUNK_SIZE - ParentWorkflowV2.getTaskQueueSize(persistence);
+        final int next = publishTasks(communication, nextRequest, Math.min(numRequests, nextRequest + Math.max(0, numTasks)));
+        persistence.setDataAttribute(ParentWorkflowV2.DA_TASKS_FED, next);
+        if (next >= numRequests) {
+            return StateDecision.deadEnd();
+        }
+        return StateDecision.singleNextState(FeedTaskQueueState.class, next);
+    }
+
+    /**
+     * @return the next request to publish
+     */
+    static int publishTasks(final Communication communication, final int fromRequest, final int toRequest) {
+        for (int index = fromRequest; index < toRequest; index++) {
+            communication.publishInternalChannel(ParentWorkflowV2.TASK_QUEUE, index);
+        }
+        return toRequest;
+    }
+}
+
 class LoopForNextTaskState implements WorkflowState<Void> {
 
     @Override
@@ -89,14 +253,42 @@ class LoopForNextTaskState implements WorkflowState<Void> {
     public CommandRequest waitUntil(final Context context, final Void input, final Persistence persistence, final Communication communication) {
 
         return CommandRequest.forAnyCommandCompleted(
-                InternalChannelCommand.create(ParentWorkflowV2.TASK_QUEUE)
+                InternalChannelCommand.create(ParentWorkflowV2.TASK_QUEUE),
+                InternalChannelCommand.create(ParentWorkflowV2.RETIRE_THREAD)
         );
     }
 
     @Override
     public StateDecision execute(final Context context, final Void input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
 
-        Integer request = (Integer) commandResults.getAllInternalChannelCommandResult().get(0).getValue().get();
+        Integer request = null;
+        boolean retired = false;
+        for (final InternalChannelCommandResult commandResult : commandResults.getAllInternalChannelCommandResult()) {
+            if (commandResult.getRequestStatusEnum() != ChannelRequestStatus.RECEIVED) {
+                continue;
+            }
+            if (ParentWorkflowV2.RETIRE_THREAD.equals(commandResult.getChannelName())) {
+                retired = true;
+            } else {
+                request = (Integer) commandResult.getValue().get();
+            }
+        }
+        if (retired) {
+            if (request != null) {
+                // received together, leave the task to the other threads
+                communication.publishInternalChannel(ParentWorkflowV2.TASK_QUEUE, request);
+            }
+            return StateDecision.deadEnd();
+        }
+
+        // Concurrent threads may overwrite each other's count, which is then behind until the next take. The thread taking
+        // the last task of the queue still sees it empty by its own request.
+        final int taken = Math.max(ParentWorkflowV2.getCount(persistence, ParentWorkflowV2.DA_TASKS_TAKEN), request + 1);
+        persistence.setDataAttribute(ParentWorkflowV2.DA_TASKS_TAKEN, taken);
+        final int parallelism = ParentWorkflowV2.getParallelism(persistence);
+        if (ParentWorkflowV2.getTaskQueueSize(persistence) <= ParentWorkflowV2.getTaskQueueLowWatermark(parallelism)) {
+            communication.publishInternalChannel(ParentWorkflowV2.REFILL_TASK_QUEUE, null);
+        }
 
         return StateDecision.singleNextState(StartChildWorkflowState.class, request);
     }
@@ -118,18 +310,35 @@ class StartChildWorkflowState implements WorkflowState<Integer> {
     @Override
     public StateDecision execute(final Context context, final Integer uuid, final CommandResults commandResults, Persistence persistence, final Communication communication) {
 
+        final boolean notification = persistence.getDataAttribute(ParentWorkflowV2.DA_CHILD_COMPLETION_MODE, ChildCompletionMode.class)
+                == ChildCompletionMode.NOTIFICATION;
+
         // Start child workflow
         String childWorkflowId = "child-wf-" + uuid;
+        ChildCompletionMode childCompletionMode = ChildCompletionMode.POLLING;
         try {
-            iwfClient.startWorkflow(ChildWorkflow.class, childWorkflowId,
-                    3600, uuid.toString());
+            if (notification) {
+                iwfClient.startWorkflow(ChildWorkflowV2.class, childWorkflowId, 3600, uuid.toString(),
+                        WorkflowOptions.basicBuilder()
+                                // A retried execution that already started the child doesn't fail, and still waits for the
+                                // notification. Only a child started by another parent(another requestId) fails to start.
+                                .workflowAlreadyStartedOptions(new WorkflowAlreadyStartedOptions()
+                                        .ignoreAlreadyStartedError(true)
+                                        .requestId(context.getChildWorkflowRequestId().get()))
+                                .initialDataAttribute(Map.of(ChildWorkflowV2.PARENT_WORKFLOW_ID, context.getWorkflowId()))
+                                .build());
+                childCompletionMode = ChildCompletionMode.NOTIFICATION;
+            } else {
+                iwfClient.startWorkflow(ChildWorkflowV2.class, childWorkflowId, 3600, uuid.toString());
+            }
         } catch (WorkflowAlreadyStartedException e) {
+            // The child may have been started by another parent, which is notified instead, so poll for it
             System.out.println("ignore this error because it is already started");
         }
 
         // This state is responsible for waiting for the child workflow to complete
         // Alternatively, if the child workflow is short running, we could just use iwfClient.waitForWorkflowCompletion(...)
-        return StateDecision.singleNextState(AwaitChildWorkflowCompletionState.class, new WaitForChildInput(childWorkflowId, 1));
+        return StateDecision.singleNextState(AwaitChildWorkflowCompletionState.class, new WaitForChildInput(childWorkflowId, 1, childCompletionMode));
     }
 }
 
@@ -153,6 +362,13 @@ class AwaitChildWorkflowCompletionState implements WorkflowState<WaitForChildInp
             final Persistence persistence,
             final Communication communication) {
 
+        if (input.childCompletionMode() == ChildCompletionMode.NOTIFICATION) {
+            // Wakes up on the notification from the child, without holding a worker thread while the child is running
+            return CommandRequest.forAnyCommandCompleted(
+                    InternalChannelCommand.create(ParentWorkflowV2.CHILD_COMPLETED_CHANNEL_PREFIX + input.childWFId()),
+                    TimerCommand.createByDuration(ParentWorkflowV2.CHILD_COMPLETION_FALLBACK_TIMEOUT)
+            );
+        }
         return CommandRequest.forAnyCommandCompleted(
                 TimerCommand.createByDuration(Duration.ofSeconds(input.timerSeconds()))
         );
@@ -165,12 +381,22 @@ class AwaitChildWorkflowCompletionState implements WorkflowState<WaitForChildInp
             final CommandResults commandResults,
             Persistence persistence,
             final Communication communication) {
+        if (input.childCompletionMode() == ChildCompletionMode.NOTIFICATION
+                && commandResults.getAllInternalChannelCommandResult().get(0).getRequestStatusEnum() == ChannelRequestStatus.RECEIVED) {
+            return StateDecision.singleNextState(LoopForNextTaskState.class);
+        }
+
+        // Polling, or not notified within the fallback timeout: check the child once via the client API
         try{
             iwfClient.waitForWorkflowCompletion(input.childWFId());
         }catch(LongPollTimeoutException e){
+            if (input.childCompletionMode() == ChildCompletionMode.NOTIFICATION) {
+                // still running, keep waiting for the notification
+                return StateDecision.singleNextState(AwaitChildWorkflowCompletionState.class, input);
+            }
             return StateDecision.singleNextState(AwaitChildWorkflowCompletionState.class,
                     // increase the timer time as backoff, cap to 10s
-                    new WaitForChildInput(input.childWFId(), Math.min(input.timerSeconds() *2, 10)));
+                    new WaitForChildInput(input.childWFId(), Math.min(input.timerSeconds() *2, 10), input.childCompletionMode()));
         }
 
         return StateDecision.singleNextState(LoopForNextTaskState.class);
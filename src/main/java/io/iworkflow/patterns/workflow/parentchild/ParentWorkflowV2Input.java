@@ -0,0 +1,16 @@
+package io.iworkflow.patterns.workflow.parentchild;
+
+/**
+ * @param numRequests         the number of dummy requests, each is processed by a child workflow
+ * @param childCompletionMode how to wait for the child workflows, POLLING if null
+ */
+public record ParentWorkflowV2Input(
+        int numRequests,
+        ChildCompletionMode childCompletionMode
+) {
+    public ParentWorkflowV2Input {
+        if (childCompletionMode == null) {
+            childCompletionMode = ChildCompletionMode.POLLING;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 package io.iworkflow.patterns.workflow.parentchild;
 
 public record WaitForChildInput(
-        String childWFId, int timerSeconds
+        String childWFId, int timerSeconds, ChildCompletionMode childCompletionMode
 ){};
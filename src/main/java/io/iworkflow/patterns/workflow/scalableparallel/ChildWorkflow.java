@@ -1,5 +1,6 @@
 package io.iworkflow.patterns.workflow.scalableparallel;
 
+import io.iworkflow.patterns.workflow.scalableparallel.models.ChildCompletion;
 import io.iworkflow.core.Client;
 import io.iworkflow.core.Context;
 import io.iworkflow.core.ObjectWorkflow;
@@ -76,9 +77,19 @@ class ProcessingState implements WorkflowState<String> {
         // It can also be passed by startWorkflow request, but here is to demonstrate how to use initial data attribute for convenience
         final String parentWorkflowId = persistence.getDataAttribute(ChildWorkflow.PARENT_WORKFLOW_ID, String.class);
 
+        // Reports the outcome and duration, which the parent uses to adjust its concurrency in the adaptive mode,
+        // and a small result, which is summed up for the progress of the request
+        // A real task would report succeeded = false when the processing fails
+        final ChildCompletion completion = new ChildCompletion(
+                context.getWorkflowId(),
+                true,
+                System.currentTimeMillis() - context.getWorkflowStartTimestampSeconds() * 1000,
+                // Dummy result, e.g. the number of records processed by the task
+                new Random().nextInt(100));
+
         final ParentWorkflow stub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
         try {
-            iwfClient.invokeRPC(stub::completeChildWorkflow, context.getWorkflowId());
+            iwfClient.invokeRPC(stub::completeChildWorkflow, completion);
         } catch (NoRunningWorkflowException e) {
             System.out.println("Parent workflow may have completed, might be duplicate completion request, ignore it.");
         }
@@ -0,0 +1,140 @@
+package io.iworkflow.patterns.workflow.scalableparallel;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.WorkflowOptions;
+import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.iworkflow.gen.models.IDReusePolicy;
+import io.iworkflow.gen.models.WorkflowAlreadyStartedOptions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static io.iworkflow.patterns.workflow.scalableparallel.ChildWorkflow.PARENT_WORKFLOW_ID;
+
+/**
+ * Starts the child workflows of a ParentWorkflow state execution concurrently, instead of one blocking startWorkflow
+ * call after another, with at most maxParallelism in flight for an execution.
+ */
+class ChildWorkflowStarter {
+
+    private final Client iwfClient;
+    private final int maxParallelism;
+    private final ExecutorService executor;
+
+    ChildWorkflowStarter(final Client iwfClient, final int maxParallelism) {
+        if (maxParallelism <= 0) {
+            throw new IllegalArgumentException("maxParallelism must be positive");
+        }
+        this.iwfClient = iwfClient;
+        this.maxParallelism = maxParallelism;
+        this.executor = newExecutor();
+    }
+
+    /**
+     * Starts the child workflows, and waits for all of them to be started or to fail.
+     * If any of them fails, the exception is thrown after all the others are done, so that the state execution is
+     * retried: the children started by this attempt are not started again, because of the same requestId.
+     *
+     * @param inputsByChildWorkflowId the input of each child workflow to start
+     * @param parentWorkflowId        the workflow id of the parent, which the children report to
+     * @param requestId               the child workflow request id of the state execution
+     * @return the ids of the child workflows started by this parent, excluding the ones started by others
+     */
+    List<String> startChildren(final Map<String, String> inputsByChildWorkflowId, final String parentWorkflowId, final String requestId) {
+        final Semaphore permits = new Semaphore(maxParallelism);
+        final Map<String, CompletableFuture<Boolean>> startedByChildWorkflowId = new LinkedHashMap<>();
+        try {
+            inputsByChildWorkflowId.forEach((childWorkflowId, input) -> {
+                permits.acquireUninterruptibly();
+                startedByChildWorkflowId.put(childWorkflowId, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return startChild(childWorkflowId, input, parentWorkflowId, requestId);
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            });
+        } finally {
+            // collect the outcome of every child, even if one fails
+            CompletableFuture.allOf(startedByChildWorkflowId.values().toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        }
+
+        final List<String> started = new ArrayList<>();
+        RuntimeException failure = null;
+        for (final Map.Entry<String, CompletableFuture<Boolean>> entry : startedByChildWorkflowId.entrySet()) {
+            try {
+                if (entry.getValue().join()) {
+                    started.add(entry.getKey());
+                }
+            } catch (CompletionException e) {
+                final RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return started;
+    }
+
+    /**
+     * @return false if the child workflow is started by another parent, so this parent should not wait for it
+     */
+    private boolean startChild(final String childWorkflowId, final String input, final String parentWorkflowId, final String requestId) {
+        try {
+            iwfClient.startWorkflow(ChildWorkflow.class, childWorkflowId,
+                    3600, input,
+                    WorkflowOptions.basicBuilder()
+                            .workflowAlreadyStartedOptions(
+                                    new WorkflowAlreadyStartedOptions()
+                                            // ignoreAlreadyStartedError together with requestId is a special feature for idempotency
+                                            // this tell server to NOT throw WorkflowAlreadyStartedException if the started workflow is
+                                            // started by the same requestId.
+                                            // This is important for edge cases, e.g. network timeout and retry but the previous attempt succeeded.
+                                            // Without this feature, server will throw the error.
+                                            // You can catch the error to ignore, however, it will be a problem if there could be multiple parents
+                                            // attempt to start the same child workflow, because child will only report to one parent and you don't know whether
+                                            // or not this parent can wait for the child.
+                                            // With this feature, you can safely ignore the error and do not wait for the child,
+                                            // because the only only happens when the child is started by another parent(different requestId)
+                                            .ignoreAlreadyStartedError(true)
+                                            // Request ID provided by parent so it can identify whether the child is actually started and skip waiting for it to complete if not
+                                            .requestId(requestId)
+
+                            )
+                            .initialDataAttribute(Map.of(PARENT_WORKFLOW_ID, parentWorkflowId))
+                            .workflowIdReusePolicy(IDReusePolicy.DISALLOW_REUSE)
+                            .build());
+            return true;
+        } catch (WorkflowAlreadyStartedException e) {
+            // in this case, the childWorkflowId won't be added to the in-flight children
+            System.out.println("already started by other state/workflow, ignore it -- not waiting for it");
+            return false;
+        }
+    }
+
+    private static ExecutorService newExecutor() {
+        // The starts are blocking HTTP calls, so use virtual threads when available(Java 21+).
+        // Looked up reflectively so that this project still compiles with Java 17
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "child-workflow-starter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
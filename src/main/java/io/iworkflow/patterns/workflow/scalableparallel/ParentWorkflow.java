@@ -1,25 +1,40 @@
 package io.iworkflow.patterns.workflow.scalableparallel;
 
 import io.iworkflow.patterns.workflow.scalableparallel.models.BatchEnqueueRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ChildCompletion;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ConcurrencyControl;
+import io.iworkflow.patterns.workflow.scalableparallel.models.EnqueueResult;
+import io.iworkflow.patterns.workflow.scalableparallel.models.InFlightChildSet;
+import io.iworkflow.patterns.workflow.scalableparallel.models.InFlightChildren;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ParentLoad;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ProgressCounters;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ProgressReport;
+import io.iworkflow.patterns.workflow.scalableparallel.models.QueuedTaskRange;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskLanes;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskPriority;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskProgress;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskRange;
 import io.iworkflow.core.*;
 import io.iworkflow.core.Context;
 import io.iworkflow.core.StateDecision;
 import io.iworkflow.core.command.BaseCommand;
 import io.iworkflow.core.command.CommandRequest;
 import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.command.TimerCommand;
 import io.iworkflow.core.communication.*;
-import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.iworkflow.core.exceptions.NoRunningWorkflowException;
 import io.iworkflow.core.persistence.DataAttributeDef;
 import io.iworkflow.core.persistence.Persistence;
 import io.iworkflow.core.persistence.PersistenceFieldDef;
 import io.iworkflow.gen.models.*;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import static io.iworkflow.patterns.workflow.scalableparallel.ChildWorkflow.PARENT_WORKFLOW_ID;
 import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.*;
 import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.*;
 
@@ -29,23 +44,61 @@ import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.*;
  */
 public class ParentWorkflow implements ObjectWorkflow {
 
+    // The defaults of the limits, which can be set per request, see ScalableParallelRequest
+
     // Number of parent workflows to control the concurrent child workflows
     // Total concurrent child workflows = NUM_PARENT_WORKFLOWS * CONCURRENCY_PER_PARENT_WORKFLOW
     public static final int NUM_PARENT_WORKFLOWS = 2;
 
     // The number of parallel child workflows that each parent workflow can control
-    // Recommended to be less than 90
+    // Can be thousands, as a loop only waits on one completion channel, and the in-flight children are stored as a bitmap.
+    // Mind the load of the iWF server: each child workflow start is an API call in the state execution.
+    // Can be changed at runtime, or adjusted automatically, see ConcurrencyControl
     public static final int CONCURRENCY_PER_PARENT_WORKFLOW = 3;
 
-    // Maximum number of requests in the TASK_QUEUE as buffer, before processing
-    // This is limited by the max history size per workflow
-    // Recommended to be less than (2~10) * CONCURRENCY_PER_PARENT_WORKFLOW
-    public static final int MAX_BUFFERED_TASKS = 10;
+    // The max number of task ranges buffered in each lane is set by TaskPriority, or by the request.
+    // A parent caps the one of a request to this multiple of the default of the priority, as they are in its history.
+    public static final int MAX_BUFFERED_TASK_RANGES_FACTOR = 10;
+
+    // The parent wakes up for this number of child completions, or for fewer completions after the window,
+    // instead of once per completion. A larger batch means fewer executions of the parent, but the freed slots of the
+    // concurrency stay unused for up to the window.
+    // Note that the window is a timer armed when the parent starts waiting, not at the first completion(a completion
+    // only wakes the parent up once consumed, which would take another execution). So the first completion after the
+    // parent has been idle for the window wakes it up right away, on its own, and only the completions arriving within
+    // the window of a wait are batched.
+    public static final int MAX_COMPLETIONS_PER_BATCH = 20;
+    public static final Duration COMPLETION_BATCH_WINDOW = Duration.ofSeconds(2);
+
+    // A failed progress report doesn't fail the parent loop, it's sent again after this interval.
+    // The progress is cumulative, so nothing is lost by a late report.
+    public static final Duration PROGRESS_REPORT_RETRY_INTERVAL = Duration.ofSeconds(5);
+
+    // The max number of child workflows that a parent execution starts at the same time
+    public static final int MAX_PARALLEL_CHILD_STARTS = 16;
+
+    // The max number of task ranges moved from the TASK_QUEUE into the lanes in one execution
+    public static final int MAX_TASK_RANGES_PER_DRAIN = 10;
 
+    // the task ranges of all priorities, to be sorted into the lanes(DA_TASK_LANES) by LoopForNextMessageState
     public static final String TASK_QUEUE = "TaskQueue";
-    public static final String CHILD_COMPLETE_CHANNEL_PREFIX = "ChildComplete_";
-    // the child workflow IDs that the parent is waiting for completion
-    public static final String DA_CURRENT_WAIT_CHILD_WFS = "CurrentWaitChildWfs";
+    // the completions of all the children, deduplicated by the child workflow ID against DA_IN_FLIGHT_CHILDREN
+    public static final String CHILD_COMPLETE_CHANNEL = "ChildComplete";
+    // the updates of the concurrency control, applied by LoopForNextMessageState
+    public static final String CONCURRENCY_CONTROL_CHANNEL = "ConcurrencyControlUpdates";
+    // the child workflows that the parent is waiting for completion, see InFlightChildSet
+    public static final String DA_IN_FLIGHT_CHILDREN = "InFlightChildren";
+    // the task ranges taken from the TASK_QUEUE by priority, which are not started as child workflows yet, see TaskLanes
+    public static final String DA_TASK_LANES = "TaskLanes";
+    public static final String DA_CONCURRENCY_CONTROL = "ConcurrencyControl";
+    // the moving average of the durations of the children, to estimate how fast the tasks are drained
+    public static final String DA_AVG_CHILD_DURATION_MILLIS = "AvgChildDurationMillis";
+    // the cumulative progress of the tasks by the request(sourceKey of the tasks), reported to the RequestReceiverWorkflow
+    public static final String DA_PROGRESS_BY_SOURCE = "ProgressBySource";
+    // the progress acknowledged by the RequestReceiverWorkflows, a request is reported again while it's behind
+    public static final String DA_REPORTED_PROGRESS_BY_SOURCE = "ReportedProgressBySource";
+    public static final String CHILD_WORKFLOW_ID_PREFIX = "processing-";
+    public static final String PARENT_WORKFLOW_ID_PREFIX = "parent_workflow_";
     private final List<StateDef> stateDefs;
 
     public ParentWorkflow(final Client iwfClient) {
@@ -63,37 +116,103 @@ public class ParentWorkflow implements ObjectWorkflow {
     @Override
     public List<CommunicationMethodDef> getCommunicationSchema() {
         return Arrays.asList(
-                InternalChannelDef.create(String.class, TASK_QUEUE),
-                InternalChannelDef.createByPrefix(Void.class, CHILD_COMPLETE_CHANNEL_PREFIX)
+                InternalChannelDef.create(QueuedTaskRange.class, TASK_QUEUE),
+                InternalChannelDef.create(ChildCompletion.class, CHILD_COMPLETE_CHANNEL),
+                InternalChannelDef.create(ConcurrencyControl.class, CONCURRENCY_CONTROL_CHANNEL)
         );
     }
 
     @Override
     public List<PersistenceFieldDef> getPersistenceSchema() {
         return Arrays.asList(
-                DataAttributeDef.create(String[].class, DA_CURRENT_WAIT_CHILD_WFS)
+                DataAttributeDef.create(InFlightChildren.class, DA_IN_FLIGHT_CHILDREN),
+                DataAttributeDef.create(TaskLanes.class, DA_TASK_LANES),
+                DataAttributeDef.create(ConcurrencyControl.class, DA_CONCURRENCY_CONTROL),
+                DataAttributeDef.create(ProgressCounters.class, DA_PROGRESS_BY_SOURCE),
+                DataAttributeDef.create(ProgressCounters.class, DA_REPORTED_PROGRESS_BY_SOURCE),
+                DataAttributeDef.create(Double.class, DA_AVG_CHILD_DURATION_MILLIS)
         );
     }
 
-    @RPC
-    public boolean enqueue(Context context, BatchEnqueueRequest request, Persistence persistence, Communication communication) {
-
-        if (communication.getInternalChannelSize(TASK_QUEUE) + request.list().size() > MAX_BUFFERED_TASKS) {
-            return false;
+    /**
+     * Accepts as many task ranges of the request as the lane can take, in order, and returns how many tasks are accepted,
+     * with the hints for the caller to send the rest: the remaining capacity, and the estimated time to drain the lane
+     * at the current pace(concurrency limit / average child duration).
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING,
+            dataAttributesPartialLoadingKeys = {DA_TASK_LANES, DA_CONCURRENCY_CONTROL, DA_AVG_CHILD_DURATION_MILLIS})
+    public EnqueueResult enqueue(Context context, BatchEnqueueRequest request, Persistence persistence, Communication communication) {
+
+        final TaskPriority priority = request.priority();
+        TaskLanes taskLanes = LoopForNextMessageState.getTaskLanes(persistence);
+        // The task ranges in the TASK_QUEUE are not sorted into the lanes yet, so they count towards the limit of any lane.
+        // The TASK_QUEUE is drained into the lanes on every execution of the parent, so it's usually empty.
+        int capacity = capMaxBufferedTaskRanges(priority, request.maxBufferedTaskRanges())
+                - communication.getInternalChannelSize(TASK_QUEUE) - taskLanes.numTaskRanges(priority);
+
+        final long now = System.currentTimeMillis();
+        int acceptedTasks = 0;
+        for (final TaskRange range : request.ranges()) {
+            if (capacity <= 0) {
+                break;
+            }
+            final QueuedTaskRange queuedTaskRange = new QueuedTaskRange(range, priority, now);
+            communication.publishInternalChannel(TASK_QUEUE, queuedTaskRange);
+            // for the estimation only, the lanes are not persisted here
+            taskLanes = taskLanes.add(queuedTaskRange);
+            acceptedTasks += range.size();
+            capacity--;
         }
 
-        request.list().forEach(uuid -> communication.publishInternalChannel(TASK_QUEUE, uuid));
-        return true;
+        final double tasksPerMilli = LoopForNextMessageState.estimateTasksPerMilli(persistence);
+        return new EnqueueResult(
+                acceptedTasks,
+                Math.max(0, capacity),
+                taskLanes.estimateDrainMillis(priority, tasksPerMilli),
+                capacity > 0 ? 0 : taskLanes.estimateHeadDrainMillis(priority, tasksPerMilli));
+    }
+
+    /**
+     * @return the max number of task ranges buffered in the lane as requested, up to MAX_BUFFERED_TASK_RANGES_FACTOR
+     * times the default of the priority
+     */
+    public static int capMaxBufferedTaskRanges(final TaskPriority priority, final int maxBufferedTaskRanges) {
+        return Math.min(maxBufferedTaskRanges, priority.defaultMaxBufferedTaskRanges() * MAX_BUFFERED_TASK_RANGES_FACTOR);
+    }
+
+    /**
+     * Read-only and without locking, so that it's cheap for RequestReceiverWorkflow to compare the parents before enqueuing
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_IN_FLIGHT_CHILDREN, DA_TASK_LANES})
+    public ParentLoad getLoad(Context context, Persistence persistence, Communication communication) {
+        final InFlightChildren inFlightChildren = persistence.getDataAttribute(DA_IN_FLIGHT_CHILDREN, InFlightChildren.class);
+        return new ParentLoad(
+                communication.getInternalChannelSize(TASK_QUEUE),
+                inFlightChildren == null ? 0 : inFlightChildren.size(),
+                LoopForNextMessageState.getTaskLanes(persistence).laneLoads(System.currentTimeMillis()));
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_CONCURRENCY_CONTROL})
+    public ConcurrencyControl getConcurrencyControl(Context context, Persistence persistence, Communication communication) {
+        return LoopForNextMessageState.getConcurrencyControl(persistence);
+    }
+
+    /**
+     * Replaces the concurrency control, e.g. to lower the limit during an incident of a downstream service.
+     * It's applied by LoopForNextMessageState, so that it's not overwritten by the adjustments of the adaptive mode.
+     * A lower limit doesn't stop the in-flight children, but no more children are started until below the limit.
+     */
+    @RPC
+    public void updateConcurrencyControl(Context context, ConcurrencyControl concurrencyControl, Communication communication) {
+        communication.publishInternalChannel(CONCURRENCY_CONTROL_CHANNEL, concurrencyControl);
     }
 
     @RPC
-    public void completeChildWorkflow(Context context, String childWorkflowId, Communication communication) {
-        // Here uses dynamic channel to wait for a child completion.
-        // This is more robust because if using a single channel, it is possible that a child can send multiple signals for its completion.
-        // In the case of network timeout and retry. And parent will have to dedup if so.
-        // Otherwise, child have to send its workflowId in the message to tell parent to dedup.
-        // Using dynamic channel with prefix and avoid this edge cases.
-        communication.publishInternalChannel(CHILD_COMPLETE_CHANNEL_PREFIX + childWorkflowId, null);
+    public void completeChildWorkflow(Context context, ChildCompletion completion, Communication communication) {
+        // All the children complete into a single channel, so that the parent waits on one command instead of one per child.
+        // A child can send its completion more than once, in the case of network timeout and retry,
+        // so the parent dedups by the child workflow ID in the message: only the children still in flight are counted.
+        communication.publishInternalChannel(CHILD_COMPLETE_CHANNEL, completion);
     }
 }
 
@@ -107,8 +226,17 @@ class InitState implements WorkflowState<BatchEnqueueRequest> {
     @Override
     public StateDecision execute(final Context context, final BatchEnqueueRequest initRequest, final CommandResults commandResults, Persistence persistence, final Communication communication) {
 
-        // Push tasks into the queue
-        initRequest.list().forEach(uuid -> communication.publishInternalChannel(ParentWorkflow.TASK_QUEUE, uuid));
+        if (initRequest.concurrencyControl() != null) {
+            persistence.setDataAttribute(DA_CONCURRENCY_CONTROL, initRequest.concurrencyControl());
+        }
+
+        // Put the task ranges into the lane directly, as nothing else is buffered yet
+        final long now = System.currentTimeMillis();
+        TaskLanes taskLanes = TaskLanes.EMPTY;
+        for (final TaskRange range : initRequest.ranges()) {
+            taskLanes = taskLanes.add(new QueuedTaskRange(range, initRequest.priority(), now));
+        }
+        persistence.setDataAttribute(DA_TASK_LANES, taskLanes);
 
         return StateDecision.singleNextState(LoopForNextMessageState.class);
     }
@@ -116,10 +244,23 @@ class InitState implements WorkflowState<BatchEnqueueRequest> {
 
 class LoopForNextMessageState implements WorkflowState<Void> {
 
+    // the weight of a new child duration in the moving average
+    private static final double AVG_CHILD_DURATION_WEIGHT = 0.1;
+    // assumed before any child completes
+    private static final long DEFAULT_CHILD_DURATION_MILLIS = 30_000;
+
+    private static final String COMMAND_ID_CONCURRENCY_CONTROL = "ConcurrencyControl";
+    private static final String COMMAND_ID_TASK_QUEUE_PREFIX = "TaskQueue_";
+    private static final String COMMAND_ID_CHILD_COMPLETION_PREFIX = "ChildCompletion_";
+    private static final String COMMAND_ID_COMPLETION_BATCH_WINDOW = "CompletionBatchWindow";
+    private static final String COMMAND_ID_PROGRESS_REPORT_RETRY = "ProgressReportRetry";
+
     private final Client iwfClient;
+    private final ChildWorkflowStarter childWorkflowStarter;
 
     public LoopForNextMessageState(final Client iwfClient) {
         this.iwfClient = iwfClient;
+        this.childWorkflowStarter = new ChildWorkflowStarter(iwfClient, MAX_PARALLEL_CHILD_STARTS);
     }
 
     @Override
@@ -130,97 +271,225 @@ class LoopForNextMessageState implements WorkflowState<Void> {
     @Override
     public CommandRequest waitUntil(final Context context, final Void input, final Persistence persistence, final Communication communication) {
 
-        String[] currentWaitChilds = persistence.getDataAttribute(DA_CURRENT_WAIT_CHILD_WFS, String[].class);
-        if (currentWaitChilds == null) {
-            currentWaitChilds =  new String[0];
+        // only the number of the in-flight children is needed here, which doesn't need to decode the bitmaps
+        final InFlightChildren inFlightChildren = persistence.getDataAttribute(DA_IN_FLIGHT_CHILDREN, InFlightChildren.class);
+        final int numInFlightChildren = inFlightChildren == null ? 0 : inFlightChildren.size();
+        final boolean hasPendingTasks = getTaskLanes(persistence).pendingTasks() > 0;
+        final int concurrencyLimit = getConcurrencyControl(persistence).currentLimit();
+
+        if (numInFlightChildren < concurrencyLimit && hasPendingTasks) {
+            // start more child workflows from the lanes right away
+            return CommandRequest.empty;
         }
 
-        ArrayList<BaseCommand> commands = new ArrayList<>();
+        final List<BaseCommand> commands = new ArrayList<>();
+        final List<List<String>> commandCombinations = new ArrayList<>();
 
-        if (currentWaitChilds.length < CONCURRENCY_PER_PARENT_WORKFLOW) {
-            commands.add(InternalChannelCommand.create(TASK_QUEUE));
-            // otherwise, don't get a new request because the concurrency limit is reached
+        commands.add(InternalChannelCommand.create(COMMAND_ID_CONCURRENCY_CONTROL, CONCURRENCY_CONTROL_CHANNEL));
+        commandCombinations.add(List.of(COMMAND_ID_CONCURRENCY_CONTROL));
+
+        // Move the task ranges from the TASK_QUEUE into the lanes even when the concurrency limit is reached,
+        // so that the lanes are up-to-date when a slot is freed, e.g. an urgent task range goes before the buffered ones.
+        // Each command receives one task range, and any of them wakes up the state.
+        for (int i = 0; i < MAX_TASK_RANGES_PER_DRAIN; i++) {
+            final String commandId = COMMAND_ID_TASK_QUEUE_PREFIX + i;
+            commands.add(InternalChannelCommand.create(commandId, TASK_QUEUE));
+            commandCombinations.add(List.of(commandId));
         }
 
-        Arrays.stream(currentWaitChilds).forEach(
-                childWfId -> commands.add(InternalChannelCommand.create(CHILD_COMPLETE_CHANNEL_PREFIX + childWfId)));
-        return CommandRequest.forAnyCommandCompleted(commands.toArray(new BaseCommand[0]));
+        // Coalesce the child completions, so that the slots freed by a batch of children are refilled in one execution:
+        // wake up when a full batch is received, or when the batching window is over and there is at least one.
+        // Each command on the completion channel receives one completion.
+        // Waiting for the completion channel also when no child is in flight, to consume the duplicated completions
+        final int batchSize = Math.max(1, Math.min(MAX_COMPLETIONS_PER_BATCH, numInFlightChildren));
+        final List<String> fullBatch = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            final String commandId = COMMAND_ID_CHILD_COMPLETION_PREFIX + i;
+            commands.add(InternalChannelCommand.create(commandId, CHILD_COMPLETE_CHANNEL));
+            fullBatch.add(commandId);
+        }
+        commandCombinations.add(fullBatch);
+        if (batchSize > 1) {
+            commands.add(TimerCommand.createByDuration(COMMAND_ID_COMPLETION_BATCH_WINDOW, COMPLETION_BATCH_WINDOW));
+            commandCombinations.add(List.of(COMMAND_ID_COMPLETION_BATCH_WINDOW, fullBatch.get(0)));
+        }
+
+        if (hasUnreportedProgress(persistence)) {
+            commands.add(TimerCommand.createByDuration(COMMAND_ID_PROGRESS_REPORT_RETRY, PROGRESS_REPORT_RETRY_INTERVAL));
+            commandCombinations.add(List.of(COMMAND_ID_PROGRESS_REPORT_RETRY));
+        }
+
+        return CommandRequest.forAnyCommandCombinationCompleted(commandCombinations, commands.toArray(new BaseCommand[0]));
     }
 
     @Override
     public StateDecision execute(final Context context, final Void input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
 
-        String[] currentWaitChilds = persistence.getDataAttribute(DA_CURRENT_WAIT_CHILD_WFS, String[].class);
-        if (currentWaitChilds == null) {
-            currentWaitChilds =  new String[0];
-        }
-
-        final ArrayList<String> newWaitList = new ArrayList<>(Arrays.stream(currentWaitChilds).toList());
+        final InFlightChildSet inFlightChildren = getInFlightChildren(persistence);
+        TaskLanes taskLanes = getTaskLanes(persistence);
+        final ConcurrencyControl currentConcurrencyControl = getConcurrencyControl(persistence);
+        ConcurrencyControl concurrencyControl = currentConcurrencyControl;
+        final List<ChildCompletion> completions = new ArrayList<>();
 
         // Process all the commands
-        // Note that "AnyCommandCompleted" could return more than one commands completed.
+        // Note that more than one command could be completed, e.g. a batch of child completions.
         for (int i = 0; i < commandResults.getAllInternalChannelCommandResult().size(); i++) {
             final InternalChannelCommandResult commandResult = commandResults.getAllInternalChannelCommandResult().get(i);
             final String channelName = commandResult.getChannelName();
             if (channelName.equals(TASK_QUEUE)) {
                 if (commandResult.getRequestStatusEnum() == ChannelRequestStatus.RECEIVED) {
-                    String request = (String) commandResult.getValue().get();
-
-                    // start child workflow
-                    String childWorkflowId = "processing-" + request;
-                    try {
-                        iwfClient.startWorkflow(ChildWorkflow.class, childWorkflowId,
-                                3600, request,
-                                WorkflowOptions.basicBuilder()
-                                        .workflowAlreadyStartedOptions(
-                                                new WorkflowAlreadyStartedOptions()
-                                                        // ignoreAlreadyStartedError together with requestId is a special feature for idempotency
-                                                        // this tell server to NOT throw WorkflowAlreadyStartedException if the started workflow is
-                                                        // started by the same requestId.
-                                                        // This is important for edge cases, e.g. network timeout and retry but the previous attempt succeeded.
-                                                        // Without this feature, server will throw the error.
-                                                        // You can catch the error to ignore, however, it will be a problem if there could be multiple parents
-                                                        // attempt to start the same child workflow, because child will only report to one parent and you don't know whether
-                                                        // or not this parent can wait for the child.
-                                                        // With this feature, you can safely ignore the error and do not wait for the child,
-                                                        // because the only only happens when the child is started by another parent(different requestId)
-                                                        .ignoreAlreadyStartedError(true)
-                                                        // Request ID provided by parent so it can identify whether the child is actually started and skip waiting for it to complete if not
-                                                        .requestId(context.getChildWorkflowRequestId().get())
-
-                                        )
-                                        .initialDataAttribute(Map.of(PARENT_WORKFLOW_ID, context.getWorkflowId()))
-                                        .workflowIdReusePolicy(IDReusePolicy.DISALLOW_REUSE)
-                                        .build());
-
-                        newWaitList.add(childWorkflowId);
-
-                    } catch (WorkflowAlreadyStartedException e) {
-                        // in this case, the childWorkflowId won't be added to newWaitList
-                        System.out.println("already started by other state/workflow, ignore it -- not waiting for it");
-                    }
+                    taskLanes = taskLanes.add((QueuedTaskRange) commandResult.getValue().get());
                 }
-            } else if (channelName.startsWith(CHILD_COMPLETE_CHANNEL_PREFIX)) {
+            } else if (channelName.equals(CHILD_COMPLETE_CHANNEL)) {
                 if (commandResult.getRequestStatusEnum() == ChannelRequestStatus.RECEIVED) {
-                    // child workflow complete channel
-                    final String childWfId = channelName.substring(CHILD_COMPLETE_CHANNEL_PREFIX.length());
-                    final boolean exists = newWaitList.remove(childWfId);
-                    if (!exists) {
-                        throw new RuntimeException("child workflow " + childWfId + " is not in the waiting list?");
+                    final ChildCompletion completion = (ChildCompletion) commandResult.getValue().get();
+                    if (inFlightChildren.remove(completion.childWorkflowId())) {
+                        completions.add(completion);
+                    } else {
+                        System.out.println("child workflow " + completion.childWorkflowId() + " is not in flight, ignore the duplicated completion");
                     }
                 }
+            } else if (channelName.equals(CONCURRENCY_CONTROL_CHANNEL)) {
+                if (commandResult.getRequestStatusEnum() == ChannelRequestStatus.RECEIVED) {
+                    concurrencyControl = (ConcurrencyControl) commandResult.getValue().get();
+                }
             } else {
                 throw new RuntimeException("unexpected channel name: " + channelName);
             }
         }
 
-        persistence.setDataAttribute(DA_CURRENT_WAIT_CHILD_WFS, newWaitList.toArray(new String[0]));
+        concurrencyControl = concurrencyControl.onCompletions(completions);
+        if (!concurrencyControl.equals(currentConcurrencyControl)) {
+            persistence.setDataAttribute(DA_CONCURRENCY_CONTROL, concurrencyControl);
+        }
 
-        if (newWaitList.isEmpty()) {
+        // Split the task ranges of the lanes lazily: only start as many child workflows as the concurrency allows,
+        // shared by the lanes by their weights
+        final int numChildrenToStart = concurrencyControl.currentLimit() - inFlightChildren.size();
+        if (numChildrenToStart > 0 && taskLanes.pendingTasks() > 0) {
+            final TaskLanes.Taken taken = taskLanes.take(numChildrenToStart);
+            final Map<String, String> inputsByChildWorkflowId = new LinkedHashMap<>();
+            taken.taskIds().forEach(request -> inputsByChildWorkflowId.put(CHILD_WORKFLOW_ID_PREFIX + request, request));
+            taskLanes = taken.rest();
+
+            // start the child workflows concurrently. If any of them fails, nothing is persisted and this execution is retried
+            childWorkflowStarter.startChildren(inputsByChildWorkflowId, context.getWorkflowId(), context.getChildWorkflowRequestId().get())
+                    .forEach(inFlightChildren::add);
+        }
+
+        if (!completions.isEmpty()) {
+            addProgress(completions, persistence);
+            updateAvgChildDuration(completions, persistence);
+        }
+        // also the reports failed in the previous executions
+        final boolean hasUnreportedProgress = reportProgress(context, persistence);
+
+        persistence.setDataAttribute(DA_IN_FLIGHT_CHILDREN, inFlightChildren.toInFlightChildren());
+        persistence.setDataAttribute(DA_TASK_LANES, taskLanes);
+        final boolean hasPendingTasks = taskLanes.pendingTasks() > 0;
+
+        if (inFlightChildren.isEmpty() && !hasPendingTasks && !hasUnreportedProgress) {
             return StateDecision.forceCompleteIfInternalChannelEmptyOrElse(TASK_QUEUE, LoopForNextMessageState.class);
         } else {
-            // this means there are still other childWorkflows waiting to complete
+            // this means there are still other childWorkflows waiting to complete, or tasks to start, or progress to report
             return StateDecision.singleNextState(LoopForNextMessageState.class);
         }
     }
+
+    private static void addProgress(final List<ChildCompletion> completions, final Persistence persistence) {
+        ProgressCounters progressBySource = getProgressCounters(persistence, DA_PROGRESS_BY_SOURCE);
+        for (final ChildCompletion completion : completions) {
+            final String sourceKey = TaskRange.sourceKeyOf(completion.childWorkflowId().substring(CHILD_WORKFLOW_ID_PREFIX.length()));
+            progressBySource = progressBySource.with(sourceKey, progressBySource.get(sourceKey).plus(completion));
+        }
+        persistence.setDataAttribute(DA_PROGRESS_BY_SOURCE, progressBySource);
+    }
+
+    /**
+     * Reports the cumulative progress to the RequestReceiverWorkflow of each request that is not acknowledged yet.
+     * A failed report, e.g. the RequestReceiverWorkflow times out, doesn't fail this execution, which would hold up
+     * the other requests of this parent: it's sent again in the next execution, as the progress is cumulative.
+     * @return whether any report failed
+     */
+    private boolean reportProgress(final Context context, final Persistence persistence) {
+        ProgressCounters progressBySource = getProgressCounters(persistence, DA_PROGRESS_BY_SOURCE);
+        ProgressCounters reportedProgressBySource = getProgressCounters(persistence, DA_REPORTED_PROGRESS_BY_SOURCE);
+        if (progressBySource.counters() == null) {
+            return false;
+        }
+
+        boolean failed = false;
+        for (final String sourceKey : List.copyOf(progressBySource.counters().keySet())) {
+            final TaskProgress progress = progressBySource.get(sourceKey);
+            if (progress.equals(reportedProgressBySource.get(sourceKey))) {
+                continue;
+            }
+            final String sourceId = TaskRange.sourceIdOfKey(sourceKey);
+            final RequestReceiverWorkflow stub = iwfClient.newRpcStub(RequestReceiverWorkflow.class, sourceId);
+            try {
+                final boolean tracked = iwfClient.invokeRPC(stub::reportProgress,
+                        new ProgressReport(sourceKey, context.getWorkflowId(), context.getWorkflowRunId(), progress));
+                if (tracked) {
+                    reportedProgressBySource = reportedProgressBySource.with(sourceKey, progress);
+                } else {
+                    // The request was started again with the same workflow id, it doesn't track the tasks of the last run
+                    progressBySource = progressBySource.without(sourceKey);
+                    reportedProgressBySource = reportedProgressBySource.without(sourceKey);
+                }
+            } catch (NoRunningWorkflowException e) {
+                // The request is completed(or timed out), no need to track it anymore
+                progressBySource = progressBySource.without(sourceKey);
+                reportedProgressBySource = reportedProgressBySource.without(sourceKey);
+            } catch (RuntimeException e) {
+                System.out.println("failed to report the progress to " + sourceId + ", retry later: " + e.getMessage());
+                failed = true;
+            }
+        }
+        persistence.setDataAttribute(DA_PROGRESS_BY_SOURCE, progressBySource);
+        persistence.setDataAttribute(DA_REPORTED_PROGRESS_BY_SOURCE, reportedProgressBySource);
+        return failed;
+    }
+
+    private static boolean hasUnreportedProgress(final Persistence persistence) {
+        return !getProgressCounters(persistence, DA_PROGRESS_BY_SOURCE)
+                .equals(getProgressCounters(persistence, DA_REPORTED_PROGRESS_BY_SOURCE));
+    }
+
+    private static ProgressCounters getProgressCounters(final Persistence persistence, final String key) {
+        final ProgressCounters progressCounters = persistence.getDataAttribute(key, ProgressCounters.class);
+        return progressCounters == null ? ProgressCounters.EMPTY : progressCounters;
+    }
+
+    private static void updateAvgChildDuration(final List<ChildCompletion> completions, final Persistence persistence) {
+        Double avgChildDurationMillis = persistence.getDataAttribute(DA_AVG_CHILD_DURATION_MILLIS, Double.class);
+        for (final ChildCompletion completion : completions) {
+            avgChildDurationMillis = avgChildDurationMillis == null
+                    ? completion.durationMillis()
+                    : avgChildDurationMillis + AVG_CHILD_DURATION_WEIGHT * (completion.durationMillis() - avgChildDurationMillis);
+        }
+        persistence.setDataAttribute(DA_AVG_CHILD_DURATION_MILLIS, avgChildDurationMillis);
+    }
+
+    /**
+     * @return how fast the children are started when the concurrency is used up, by the average child duration
+     */
+    static double estimateTasksPerMilli(final Persistence persistence) {
+        final Double avgChildDurationMillis = persistence.getDataAttribute(DA_AVG_CHILD_DURATION_MILLIS, Double.class);
+        final double durationMillis = avgChildDurationMillis == null ? DEFAULT_CHILD_DURATION_MILLIS : Math.max(1, avgChildDurationMillis);
+        return getConcurrencyControl(persistence).currentLimit() / durationMillis;
+    }
+
+    private static InFlightChildSet getInFlightChildren(final Persistence persistence) {
+        return InFlightChildSet.of(persistence.getDataAttribute(DA_IN_FLIGHT_CHILDREN, InFlightChildren.class));
+    }
+
+    static TaskLanes getTaskLanes(final Persistence persistence) {
+        final TaskLanes taskLanes = persistence.getDataAttribute(DA_TASK_LANES, TaskLanes.class);
+        return taskLanes == null ? TaskLanes.EMPTY : taskLanes;
+    }
+
+    static ConcurrencyControl getConcurrencyControl(final Persistence persistence) {
+        final ConcurrencyControl concurrencyControl = persistence.getDataAttribute(DA_CONCURRENCY_CONTROL, ConcurrencyControl.class);
+        return concurrencyControl == null ? ConcurrencyControl.fixed(CONCURRENCY_PER_PARENT_WORKFLOW) : concurrencyControl;
+    }
 }
@@ -1,35 +1,70 @@
 package io.iworkflow.patterns.workflow.scalableparallel;
 
-import io.iworkflow.patterns.workflow.scalableparallel.exceptions.EnqueueFailedException;
 import io.iworkflow.patterns.workflow.scalableparallel.models.BatchEnqueueRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.DelayedRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.EnqueueResult;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ParentLoad;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ProgressCounters;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ProgressReport;
+import io.iworkflow.patterns.workflow.scalableparallel.models.RequestProgress;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ScalableParallelRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskRange;
 import io.iworkflow.core.Client;
 import io.iworkflow.core.Context;
 import io.iworkflow.core.ObjectWorkflow;
+import io.iworkflow.core.RPC;
 import io.iworkflow.core.StateDecision;
 import io.iworkflow.core.StateDef;
 import io.iworkflow.core.WorkflowState;
+import io.iworkflow.core.command.CommandRequest;
 import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.command.TimerCommand;
 import io.iworkflow.core.communication.Communication;
+import io.iworkflow.core.communication.CommunicationMethodDef;
+import io.iworkflow.core.communication.InternalChannelCommand;
+import io.iworkflow.core.communication.InternalChannelDef;
 import io.iworkflow.core.exceptions.NoRunningWorkflowException;
+import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.iworkflow.core.persistence.DataAttributeDef;
 import io.iworkflow.core.persistence.Persistence;
+import io.iworkflow.core.persistence.PersistenceFieldDef;
+import io.iworkflow.gen.models.PersistenceLoadingType;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Random;
-import java.util.UUID;
 
-import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.NUM_PARENT_WORKFLOWS;
+import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.PARENT_WORKFLOW_ID_PREFIX;
 
 /**
- * A workflow for handling a request to start processing items via ParentWorkflow
+ * A workflow for handling a request to start processing items via ParentWorkflow.
+ * After all the tasks are sent to the parents, it keeps running until all of them are completed, to track the progress
+ * of the request, which is reported by the parents, and completes with the final progress as the output.
  */
 public class RequestReceiverWorkflow implements ObjectWorkflow {
 
+    // The offset of the next task to send to a parent, as the checkpoint of the request
+    public static final String DA_CURSOR = "Cursor";
+    public static final String DA_NUM_TASKS = "NumTasks";
+    // the cumulative progress reported by each run of the parents, see ProgressCounters
+    public static final String DA_PROGRESS_BY_PARENT = "ProgressByParent";
+    public static final String ALL_TASKS_COMPLETED_CHANNEL = "AllTasksCompleted";
+
+    // The max number of tasks in a task range, the unit that a parent accepts or rejects
+    // A larger batch means fewer executions of RequestState, but spreads the tasks of a request across fewer parents
+    public static final int MAX_TASKS_PER_BATCH = 1000;
+    // The max number of task ranges sent to a parent in one enqueue, within the capacity that the parent reports
+    public static final int MAX_TASK_RANGES_PER_ENQUEUE = 5;
+
     private final List<StateDef> stateDefs;
 
     public RequestReceiverWorkflow(Client iwfClient) {
         this.stateDefs = List.of(
-                StateDef.startingState(new RequestState(iwfClient))
+                StateDef.startingState(new RequestState(iwfClient)),
+                StateDef.nonStartingState(new WaitForCapacityState()),
+                StateDef.nonStartingState(new WaitForTasksState())
         );
     }
 
@@ -37,9 +72,76 @@ public class RequestReceiverWorkflow implements ObjectWorkflow {
     public List<StateDef> getWorkflowStates() {
         return stateDefs;
     }
+
+    @Override
+    public List<PersistenceFieldDef> getPersistenceSchema() {
+        return List.of(
+                DataAttributeDef.create(Integer.class, DA_CURSOR),
+                DataAttributeDef.create(Integer.class, DA_NUM_TASKS),
+                DataAttributeDef.create(ProgressCounters.class, DA_PROGRESS_BY_PARENT)
+        );
+    }
+
+    @Override
+    public List<CommunicationMethodDef> getCommunicationSchema() {
+        return List.of(
+                InternalChannelDef.create(Void.class, ALL_TASKS_COMPLETED_CHANNEL)
+        );
+    }
+
+    /**
+     * Called by a parent after its children complete, with the cumulative progress of this request in the parent.
+     * As it's cumulative, a retried or late report doesn't count the same tasks twice.
+     * @return false if the report is of the tasks of another run of this workflow id, which is ignored
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_PROGRESS_BY_PARENT},
+            dataAttributesPartialLoadingKeys = {DA_PROGRESS_BY_PARENT, DA_NUM_TASKS})
+    public boolean reportProgress(Context context, ProgressReport report, Persistence persistence, Communication communication) {
+        if (!TaskRange.sourceKey(context.getWorkflowId(), context.getWorkflowRunId()).equals(report.sourceKey())) {
+            return false;
+        }
+        final ProgressCounters progressByParent = getProgressByParent(persistence);
+        final ProgressCounters updated = progressByParent.withLatest(report.parentRunKey(), report.progress());
+        if (updated == progressByParent) {
+            return true;
+        }
+        persistence.setDataAttribute(DA_PROGRESS_BY_PARENT, updated);
+
+        final Integer numTasks = persistence.getDataAttribute(DA_NUM_TASKS, Integer.class);
+        if (numTasks != null && updated.total().completedTasks() >= numTasks) {
+            communication.publishInternalChannel(ALL_TASKS_COMPLETED_CHANNEL, null);
+        }
+        return true;
+    }
+
+    /**
+     * Read-only and without locking, so that it's cheap to poll
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_CURSOR, DA_NUM_TASKS, DA_PROGRESS_BY_PARENT})
+    public RequestProgress getProgress(Context context, Persistence persistence, Communication communication) {
+        return getProgress(persistence);
+    }
+
+    static RequestProgress getProgress(final Persistence persistence) {
+        final Integer numTasks = persistence.getDataAttribute(DA_NUM_TASKS, Integer.class);
+        final Integer cursor = persistence.getDataAttribute(DA_CURSOR, Integer.class);
+        return RequestProgress.of(
+                numTasks == null ? 0 : numTasks,
+                cursor == null ? 0 : cursor,
+                getProgressByParent(persistence).total());
+    }
+
+    private static ProgressCounters getProgressByParent(final Persistence persistence) {
+        final ProgressCounters progressByParent = persistence.getDataAttribute(DA_PROGRESS_BY_PARENT, ProgressCounters.class);
+        return progressByParent == null ? ProgressCounters.EMPTY : progressByParent;
+    }
 }
 
-class RequestState implements WorkflowState<Integer> {
+class RequestState implements WorkflowState<ScalableParallelRequest> {
+
+    // the bounds of the delay to retry when all the parents are full, around the hints of the parents
+    private static final long MIN_RETRY_DELAY_MILLIS = 1_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
 
     private final Client iwfClient;
 
@@ -48,47 +150,207 @@ class RequestState implements WorkflowState<Integer> {
     }
 
     @Override
-    public Class<Integer> getInputType() {
-        return Integer.class;
+    public Class<ScalableParallelRequest> getInputType() {
+        return ScalableParallelRequest.class;
     }
 
     @Override
-    public StateDecision execute(final Context context, final Integer numberOfChildWfs, final CommandResults commandResults, Persistence persistence, final Communication communication) {
-        final BatchEnqueueRequest request = generateTasks(numberOfChildWfs);
+    public StateDecision execute(final Context context, final ScalableParallelRequest input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+        // The tasks are sent in batches by looping back to this state with a cursor: each execution sends the tasks
+        // after the cursor to the parents, as many as they accept, and moves the cursor by the accepted tasks, until all
+        // the tasks are sent, so that the memory and payload of a state execution stay the same even for millions of tasks.
+        // A parent that fails(e.g. an RPC timeout) is skipped for the next one, and the cursor reached so far is always
+        // persisted, so that the tasks accepted by the other parents are not sent again.
+        Integer cursor = persistence.getDataAttribute(RequestReceiverWorkflow.DA_CURSOR, Integer.class);
+        if (cursor == null) {
+            cursor = 0;
+            persistence.setDataAttribute(RequestReceiverWorkflow.DA_NUM_TASKS, input.numTasks());
+        }
+        if (cursor >= input.numTasks()) {
+            return StateDecision.singleNextState(WaitForTasksState.class);
+        }
 
-        // Generate a random number between 1 and NUM_PARENT_WORKFLOWS to assign child workflows
-        // NOTE: This is just for demo purposes. In a real-world scenario, a nice improvement would be to assign tasks to ParentWorkflows based on the task queue size
-        int randSuffix = (new Random().nextInt(NUM_PARENT_WORKFLOWS)) + 1;
+        final int startCursor = cursor;
+        long retryAfterMillis = Long.MAX_VALUE;
+        for (final PreferredParent parent : choosePreferredParents(input)) {
+            if (cursor >= input.numTasks()) {
+                break;
+            }
+            final int capacity = parent.capacity(input);
+            if (capacity <= 0) {
+                continue;
+            }
+            // Only the rest of the tasks that the previous parents didn't accept are sent to the next parent
+            final BatchEnqueueRequest request = new BatchEnqueueRequest(
+                    generateTasks(context.getWorkflowId(), context.getWorkflowRunId(), cursor, input.numTasks(), Math.min(capacity, RequestReceiverWorkflow.MAX_TASK_RANGES_PER_ENQUEUE)),
+                    input.priority(),
+                    input.maxBufferedTaskRanges(),
+                    input.concurrencyControl());
+            final EnqueueResult result;
+            try {
+                result = enqueue(parent.workflowId(), request);
+            } catch (RuntimeException e) {
+                // Fail over to the next parent. If this parent did accept the tasks, they are sent again later, and
+                // the children started twice are deduplicated by their ids
+                System.out.println("failed to enqueue to parent " + parent.workflowId() + ", try the next parent: " + e.getMessage());
+                continue;
+            }
+            if (result.acceptedTasks() == 0) {
+                retryAfterMillis = Math.min(retryAfterMillis, result.retryAfterMillis());
+            }
+            cursor += result.acceptedTasks();
+        }
+        persistence.setDataAttribute(RequestReceiverWorkflow.DA_CURSOR, cursor);
 
-        final String parentWorkflowId = "parent_workflow_" + randSuffix;
+        if (cursor >= input.numTasks()) {
+            return StateDecision.singleNextState(WaitForTasksState.class);
+        }
+        if (cursor > startCursor) {
+            return StateDecision.singleNextState(RequestState.class, input);
+        }
+        // All the parents are full or failed: wait for the earliest one to have room, instead of retrying the state right away
+        final long delayMillis = retryAfterMillis == Long.MAX_VALUE
+                ? MIN_RETRY_DELAY_MILLIS
+                : Math.max(MIN_RETRY_DELAY_MILLIS, Math.min(MAX_RETRY_DELAY_MILLIS, retryAfterMillis));
+        return StateDecision.singleNextState(WaitForCapacityState.class, new DelayedRequest(input, delayMillis));
+    }
 
+    private EnqueueResult enqueue(final String parentWorkflowId, final BatchEnqueueRequest request) {
         final ParentWorkflow stub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
-
-        // In this example, we send all tasks in one request. This may not work in real world. 
-        // If there are too many tasks(e.g. 10K+), it may be better to send them in multiple batches.
-        // And we should iterate through all the baches, by looping back to this state with a cursor:
-        // for the first state execution, send batch1, 2nd state execution, send batch2, ... etc. until
-        // all the batches are sent. 
-        // Using this state loop so that whenever something fail, it will resume from the last batch as checkpoint.
         try {
-            boolean success = iwfClient.invokeRPC(stub::enqueue, request);
-            if (!success) {
-                throw new EnqueueFailedException("Enqueue failed, retry in next attempt");
+            return iwfClient.invokeRPC(stub::enqueue, request);
+        } catch (NoRunningWorkflowException e) {
+            try {
+                // A new parent takes all the task ranges, as the number is within its limit
+                iwfClient.startWorkflow(ParentWorkflow.class, parentWorkflowId, 0, request);
+                return new EnqueueResult(request.ranges().stream().mapToInt(TaskRange::size).sum(), 0, 0, 0);
+            } catch (WorkflowAlreadyStartedException alreadyStarted) {
+                // Started by another request in the meantime, so enqueue to it like to any running parent
+                return iwfClient.invokeRPC(stub::enqueue, request);
+            }
+        }
+    }
+
+    /**
+     * Orders the parents to try by "power of two choices": two random parents are compared by their load, so that
+     * the less loaded one is tried first, without asking all the parents. The other parents follow in random order,
+     * in case both are full.
+     * A parent that is known to have no room for another task range in the lane of the request is moved to the end,
+     * after a sampled parent whose load couldn't be read.
+     */
+    private List<PreferredParent> choosePreferredParents(final ScalableParallelRequest input) {
+        final List<String> parentWorkflowIds = new ArrayList<>();
+        for (int i = 1; i <= input.numParentWorkflows(); i++) {
+            parentWorkflowIds.add(PARENT_WORKFLOW_ID_PREFIX + i);
+        }
+        Collections.shuffle(parentWorkflowIds);
+
+        final List<PreferredParent> sampled = new ArrayList<>();
+        parentWorkflowIds.subList(0, Math.min(2, parentWorkflowIds.size())).forEach(parentWorkflowId ->
+                sampled.add(new PreferredParent(parentWorkflowId, getLoad(parentWorkflowId))));
+        sampled.sort(Comparator.comparing(PreferredParent::load, Comparator.nullsLast(Comparator.comparingLong(RequestState::estimateTasks))));
+
+        final List<PreferredParent> ordered = new ArrayList<>();
+        final List<PreferredParent> full = new ArrayList<>();
+        sampled.forEach(parent -> {
+            if (parent.capacity(input) <= 0) {
+                full.add(parent);
+            } else {
+                ordered.add(parent);
             }
+        });
+        parentWorkflowIds.subList(sampled.size(), parentWorkflowIds.size()).forEach(parentWorkflowId ->
+                ordered.add(new PreferredParent(parentWorkflowId, null)));
+        ordered.addAll(full);
+        return ordered;
+    }
+
+    /**
+     * The task ranges in the TASK_QUEUE are only counted, so assume that they are full batches.
+     * The lanes of all priorities are counted, as they share the concurrency of the parent.
+     */
+    private static long estimateTasks(final ParentLoad load) {
+        return (long) load.queuedTaskRanges() * RequestReceiverWorkflow.MAX_TASKS_PER_BATCH + load.pendingTasks() + load.inFlightChildren();
+    }
+
+    private ParentLoad getLoad(final String parentWorkflowId) {
+        final ParentWorkflow stub = iwfClient.newRpcStub(ParentWorkflow.class, parentWorkflowId);
+        try {
+            return iwfClient.invokeRPC(stub::getLoad);
         } catch (NoRunningWorkflowException e) {
-            iwfClient.startWorkflow(ParentWorkflow.class, parentWorkflowId, 0, request);
+            // Not started yet, or completed after processing all its tasks
+            return ParentLoad.EMPTY;
+        } catch (RuntimeException e) {
+            // e.g. an RPC timeout: still try the parent, after the others
+            System.out.println("failed to get the load of parent " + parentWorkflowId + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        return StateDecision.gracefulCompleteWorkflow();
+    // Dummy task generation based on the offsets of the tasks in the request
+    // Real life example would be to take a request and divide it into smaller repeatable tasks, e.g. a range of lines of a file
+    // The tasks are sent as ranges of up to MAX_TASKS_PER_BATCH, which the parent splits into single tasks. The task ids
+    // are derived from the offsets, so that a batch sent again after a failure has the same tasks, and from the run id,
+    // so that the request started again with the same workflow id doesn't collide with the child workflows of the last run
+    private static List<TaskRange> generateTasks(final String requestId, final String requestRunId, final int startOffset, final int endOffset, final int maxRanges) {
+        final List<TaskRange> ranges = new ArrayList<>();
+        for (int offset = startOffset; offset < endOffset && ranges.size() < maxRanges; offset += RequestReceiverWorkflow.MAX_TASKS_PER_BATCH) {
+            ranges.add(new TaskRange(requestId, requestRunId, offset, Math.min(endOffset, offset + RequestReceiverWorkflow.MAX_TASKS_PER_BATCH)));
+        }
+        return ranges;
     }
 
-    // Dummy task generation based on the number passed in the request
-    // Real life example would be to take a request and divide it into smaller repeatable tasks
-    private static BatchEnqueueRequest generateTasks(Integer numberOfChildWfs) {
-        List<String> uuids = new ArrayList<>();
-        for (int i = 0; i < numberOfChildWfs; i++) {
-            uuids.add(UUID.randomUUID().toString());
+    /**
+     * @param load the reported load, or null if not asked or failed to get
+     */
+    private record PreferredParent(String workflowId, ParentLoad load) {
+        // the number of task ranges that the parent can take in the lane of the request, as checked by ParentWorkflow.enqueue
+        int capacity(final ScalableParallelRequest request) {
+            final int maxBufferedTaskRanges = ParentWorkflow.capMaxBufferedTaskRanges(request.priority(), request.maxBufferedTaskRanges());
+            return load == null
+                    ? maxBufferedTaskRanges
+                    : maxBufferedTaskRanges - load.queuedTaskRanges() - load.lane(request.priority()).taskRanges();
         }
-        return new BatchEnqueueRequest(uuids);
     }
-}
\ No newline at end of file
+}
+
+class WaitForCapacityState implements WorkflowState<DelayedRequest> {
+
+    @Override
+    public Class<DelayedRequest> getInputType() {
+        return DelayedRequest.class;
+    }
+
+    @Override
+    public CommandRequest waitUntil(final Context context, final DelayedRequest input, final Persistence persistence, final Communication communication) {
+        return CommandRequest.forAllCommandCompleted(
+                TimerCommand.createByDuration(Duration.ofMillis(input.delayMillis())));
+    }
+
+    @Override
+    public StateDecision execute(final Context context, final DelayedRequest input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+        return StateDecision.singleNextState(RequestState.class, input.request());
+    }
+}
+
+class WaitForTasksState implements WorkflowState<Void> {
+
+    @Override
+    public Class<Void> getInputType() {
+        return Void.class;
+    }
+
+    @Override
+    public CommandRequest waitUntil(final Context context, final Void input, final Persistence persistence, final Communication communication) {
+        if (RequestReceiverWorkflow.getProgress(persistence).allTasksCompleted()) {
+            return CommandRequest.empty;
+        }
+        return CommandRequest.forAllCommandCompleted(
+                InternalChannelCommand.create(RequestReceiverWorkflow.ALL_TASKS_COMPLETED_CHANNEL));
+    }
+
+    @Override
+    public StateDecision execute(final Context context, final Void input, final CommandResults commandResults, Persistence persistence, final Communication communication) {
+        return StateDecision.gracefulCompleteWorkflow(RequestReceiverWorkflow.getProgress(persistence));
+    }
+}
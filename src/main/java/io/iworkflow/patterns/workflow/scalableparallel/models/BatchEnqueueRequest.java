@@ -2,7 +2,21 @@ package io.iworkflow.patterns.workflow.scalableparallel.models;
 
 import java.util.List;
 
+/**
+ * @param ranges                the task ranges to enqueue
+ * @param priority              the lane of the task ranges
+ * @param maxBufferedTaskRanges the enqueue is rejected if the parent would buffer more task ranges than this in the lane
+ * @param concurrencyControl    only used when the parent is started by this request
+ */
 public record BatchEnqueueRequest(
-        List<String> list
+        List<TaskRange> ranges,
+        TaskPriority priority,
+        int maxBufferedTaskRanges,
+        ConcurrencyControl concurrencyControl
 ) {
-}
\ No newline at end of file
+    public BatchEnqueueRequest {
+        if (priority == null) {
+            priority = TaskPriority.NORMAL;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * Reported by a ChildWorkflow to its parent when it completes
+ * @param childWorkflowId the workflow id of the child
+ * @param succeeded       whether the task is processed successfully
+ * @param durationMillis  how long the child took, from its start to its completion
+ * @param result          a small result of the task to aggregate for the request, e.g. the number of records processed
+ */
+public record ChildCompletion(
+        String childWorkflowId,
+        boolean succeeded,
+        long durationMillis,
+        long result
+) {
+}
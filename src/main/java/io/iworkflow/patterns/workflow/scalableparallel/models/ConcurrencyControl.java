@@ -0,0 +1,60 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.List;
+
+/**
+ * How a ParentWorkflow limits the number of in-flight child workflows.
+ * <p>
+ * With adaptive = false, the limit is fixed. With adaptive = true, the limit follows AIMD(additive increase,
+ * multiplicative decrease) from the completions of the children: it grows by about 1 for every "limit" completions,
+ * and is cut by {@link #DECREASE_FACTOR} when a child fails or takes longer than the latency target. It always stays
+ * between minLimit and maxLimit, where maxLimit is what the downstream services can take.
+ *
+ * @param adaptive            whether the limit is adjusted by the completions of the children
+ * @param limit               the current limit, fractional so that the additive increase can accumulate
+ * @param minLimit            the lowest limit
+ * @param maxLimit            the highest limit
+ * @param latencyTargetMillis a child taking longer than this is a sign of overload
+ */
+public record ConcurrencyControl(
+        boolean adaptive,
+        double limit,
+        int minLimit,
+        int maxLimit,
+        long latencyTargetMillis
+) {
+    public static final double DECREASE_FACTOR = 0.5;
+
+    public ConcurrencyControl {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("minLimit must be between 1 and maxLimit");
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    public static ConcurrencyControl fixed(final int limit) {
+        return new ConcurrencyControl(false, limit, limit, limit, 0);
+    }
+
+    /**
+     * @return the max number of in-flight child workflows right now
+     */
+    public int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @param completions the children completed since the last adjustment
+     * @return the control with the adjusted limit
+     */
+    public ConcurrencyControl onCompletions(final List<ChildCompletion> completions) {
+        if (!adaptive || completions.isEmpty()) {
+            return this;
+        }
+        final boolean overloaded = completions.stream()
+                .anyMatch(completion -> !completion.succeeded() || completion.durationMillis() > latencyTargetMillis);
+        // Decrease at most once for a batch of completions, as they are likely caused by the same overload
+        final double newLimit = overloaded ? limit * DECREASE_FACTOR : limit + (double) completions.size() / limit;
+        return new ConcurrencyControl(adaptive, newLimit, minLimit, maxLimit, latencyTargetMillis);
+    }
+}
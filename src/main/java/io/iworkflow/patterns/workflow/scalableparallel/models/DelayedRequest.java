@@ -0,0 +1,12 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * A request of RequestReceiverWorkflow to continue after a delay, when all the parents are full
+ * @param request     the request
+ * @param delayMillis how long to wait before sending the rest of the tasks
+ */
+public record DelayedRequest(
+        ScalableParallelRequest request,
+        long delayMillis
+) {
+}
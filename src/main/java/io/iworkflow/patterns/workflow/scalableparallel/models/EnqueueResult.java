@@ -0,0 +1,16 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * The result of ParentWorkflow.enqueue, with the hints for the caller to send the rest of the tasks
+ * @param acceptedTasks        the number of tasks accepted, from the beginning of the task ranges in the request
+ * @param remainingCapacity    the number of task ranges that the lane can still take
+ * @param estimatedDrainMillis the estimated time until all the tasks in the lane are started, at the current pace
+ * @param retryAfterMillis     the estimated time until the lane can take another task range, 0 if it can now
+ */
+public record EnqueueResult(
+        int acceptedTasks,
+        int remainingCapacity,
+        long estimatedDrainMillis,
+        long retryAfterMillis
+) {
+}
@@ -0,0 +1,166 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The child workflows that a parent is waiting for, with constant cost to add, remove and look up a child.
+ * It's decoded from {@link InFlightChildren} at the beginning of a state, and encoded back at the end.
+ * <p>
+ * Child workflow ids must be "{prefix}-{offset}", e.g. "processing-request1-42", as derived from {@link TaskRange}.
+ */
+public final class InFlightChildSet {
+
+    // An offset in JSON(up to 8 chars with the separator) costs about as much as 48 bits of the Base64 bitmap, so the
+    // offsets are stored as a list when the bitmap would have more bits per child
+    static final int MAX_BITS_PER_CHILD = 48;
+
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+    private int size;
+
+    public static InFlightChildSet of(final InFlightChildren inFlightChildren) {
+        final InFlightChildSet set = new InFlightChildSet();
+        if (inFlightChildren != null && inFlightChildren.windows() != null) {
+            inFlightChildren.windows().forEach((prefix, window) -> {
+                final BitSet bits;
+                if (window.offsets() != null) {
+                    bits = new BitSet();
+                    for (final int offset : window.offsets()) {
+                        bits.set(offset - window.baseOffset());
+                    }
+                } else {
+                    bits = BitSet.valueOf(window.bits());
+                }
+                set.windows.put(prefix, new Window(window.baseOffset(), bits, window.count()));
+                set.size += window.count();
+            });
+        }
+        return set;
+    }
+
+    /**
+     * @return false if the child is already in the set
+     */
+    public boolean add(final String childWorkflowId) {
+        final int separator = separatorIndex(childWorkflowId);
+        final int offset = parseOffset(childWorkflowId, separator);
+        final Window window = windows.computeIfAbsent(
+                childWorkflowId.substring(0, separator), prefix -> new Window(offset, new BitSet(), 0));
+        if (offset < window.baseOffset) {
+            window.rebase(offset);
+        }
+        final int index = offset - window.baseOffset;
+        if (window.bits.get(index)) {
+            return false;
+        }
+        window.bits.set(index);
+        window.count++;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return false if the child is not in the set, e.g. a duplicate completion
+     */
+    public boolean remove(final String childWorkflowId) {
+        final int separator = separatorIndex(childWorkflowId);
+        final String prefix = childWorkflowId.substring(0, separator);
+        final Window window = windows.get(prefix);
+        if (window == null) {
+            return false;
+        }
+        final int index = parseOffset(childWorkflowId, separator) - window.baseOffset;
+        if (index < 0 || !window.bits.get(index)) {
+            return false;
+        }
+        window.bits.clear(index);
+        window.count--;
+        size--;
+        if (window.count == 0) {
+            windows.remove(prefix);
+        }
+        return true;
+    }
+
+    public boolean contains(final String childWorkflowId) {
+        final int separator = separatorIndex(childWorkflowId);
+        final Window window = windows.get(childWorkflowId.substring(0, separator));
+        if (window == null) {
+            return false;
+        }
+        final int index = parseOffset(childWorkflowId, separator) - window.baseOffset;
+        return index >= 0 && window.bits.get(index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public InFlightChildren toInFlightChildren() {
+        final Map<String, InFlightChildren.OffsetWindow> encoded = new LinkedHashMap<>();
+        windows.forEach((prefix, window) -> {
+            // the completed children at the beginning of the window are trimmed off
+            final int first = window.bits.nextSetBit(0);
+            final int numBits = window.bits.length() - first;
+            if (numBits > (long) window.count * MAX_BITS_PER_CHILD) {
+                final int[] offsets = new int[window.count];
+                int i = 0;
+                for (int index = first; index >= 0; index = window.bits.nextSetBit(index + 1)) {
+                    offsets[i++] = window.baseOffset + index;
+                }
+                encoded.put(prefix, new InFlightChildren.OffsetWindow(window.baseOffset + first, window.count, null, offsets));
+            } else {
+                encoded.put(prefix, new InFlightChildren.OffsetWindow(
+                        window.baseOffset + first,
+                        window.count,
+                        window.bits.get(first, window.bits.length()).toByteArray(),
+                        null));
+            }
+        });
+        return new InFlightChildren(encoded);
+    }
+
+    private static int separatorIndex(final String childWorkflowId) {
+        final int separator = childWorkflowId.lastIndexOf('-');
+        if (separator < 0) {
+            throw new IllegalArgumentException("child workflow id is not {prefix}-{offset}: " + childWorkflowId);
+        }
+        return separator;
+    }
+
+    private static int parseOffset(final String childWorkflowId, final int separator) {
+        try {
+            return Integer.parseInt(childWorkflowId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("child workflow id is not {prefix}-{offset}: " + childWorkflowId, e);
+        }
+    }
+
+    private static final class Window {
+        private int baseOffset;
+        private BitSet bits;
+        private int count;
+
+        private Window(final int baseOffset, final BitSet bits, final int count) {
+            this.baseOffset = baseOffset;
+            this.bits = bits;
+            this.count = count;
+        }
+
+        // rare: the offsets of a prefix are mostly added in increasing order
+        private void rebase(final int newBaseOffset) {
+            final BitSet rebased = new BitSet();
+            final int shift = baseOffset - newBaseOffset;
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                rebased.set(i + shift);
+            }
+            baseOffset = newBaseOffset;
+            bits = rebased;
+        }
+    }
+}
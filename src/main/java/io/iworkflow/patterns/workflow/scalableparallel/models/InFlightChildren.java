@@ -0,0 +1,36 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.Map;
+
+/**
+ * The persisted form of {@link InFlightChildSet}: the child workflows that a parent is waiting for.
+ * <p>
+ * The child workflow ids are "{prefix}-{offset}" as the tasks come from task ranges, so the ids with the same prefix
+ * are stored as a bitmap of their offsets, which is about one bit per child instead of a whole id. When the offsets are
+ * sparse, e.g. a slow child holds the beginning of the bitmap while the later ones complete, they are stored as a list
+ * instead, so that the size stays proportional to the number of children.
+ *
+ * @param windows the offsets of the in-flight children by the prefix of their ids
+ */
+public record InFlightChildren(
+        Map<String, OffsetWindow> windows
+) {
+    public int size() {
+        return windows == null ? 0 : windows.values().stream().mapToInt(OffsetWindow::count).sum();
+    }
+
+    /**
+     * @param baseOffset the offset of the first bit
+     * @param count      the number of bits set
+     * @param bits       the bitmap of the offsets from baseOffset, as in {@link java.util.BitSet#toByteArray()}. Null
+     *                   when the offsets are sparse
+     * @param offsets    the offsets when they are sparse, null otherwise
+     */
+    public record OffsetWindow(
+            int baseOffset,
+            int count,
+            byte[] bits,
+            int[] offsets
+    ) {
+    }
+}
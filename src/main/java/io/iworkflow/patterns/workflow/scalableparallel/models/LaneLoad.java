@@ -0,0 +1,15 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * The load of a lane of a ParentWorkflow
+ * @param taskRanges   the number of task ranges in the lane, including the one being started
+ * @param pendingTasks the number of tasks in the lane that are not started yet
+ * @param waitMillis   how long the oldest task range of the lane has been waiting since enqueued, 0 if the lane is empty
+ */
+public record LaneLoad(
+        int taskRanges,
+        int pendingTasks,
+        long waitMillis
+) {
+    public static final LaneLoad EMPTY = new LaneLoad(0, 0, 0);
+}
@@ -0,0 +1,28 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.Map;
+
+/**
+ * The load reported by a ParentWorkflow
+ * @param queuedTaskRanges the number of task ranges in the TASK_QUEUE, which are not sorted into the lanes yet
+ * @param inFlightChildren the number of child workflows that the parent is waiting for
+ * @param lanes            the load of each lane
+ */
+public record ParentLoad(
+        int queuedTaskRanges,
+        int inFlightChildren,
+        Map<TaskPriority, LaneLoad> lanes
+) {
+    public static final ParentLoad EMPTY = new ParentLoad(0, 0, Map.of());
+
+    public LaneLoad lane(final TaskPriority priority) {
+        return lanes == null ? LaneLoad.EMPTY : lanes.getOrDefault(priority, LaneLoad.EMPTY);
+    }
+
+    /**
+     * @return the number of tasks in all the lanes that are not started yet
+     */
+    public long pendingTasks() {
+        return lanes == null ? 0 : lanes.values().stream().mapToLong(LaneLoad::pendingTasks).sum();
+    }
+}
@@ -0,0 +1,49 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cumulative progress by a key: by request(the sourceId of the tasks) in a ParentWorkflow, and by parent run
+ * (see ProgressReport.parentRunKey) in a RequestReceiverWorkflow.
+ * The counters only grow within a key, so a report of them can be retried or arrive out of order: the larger one wins.
+ * A restarted parent counts from 0 again, so it must report under a new key.
+ */
+public record ProgressCounters(
+        Map<String, TaskProgress> counters
+) {
+    public static final ProgressCounters EMPTY = new ProgressCounters(Map.of());
+
+    public TaskProgress get(final String key) {
+        return counters == null ? TaskProgress.EMPTY : counters.getOrDefault(key, TaskProgress.EMPTY);
+    }
+
+    public ProgressCounters with(final String key, final TaskProgress progress) {
+        final Map<String, TaskProgress> newCounters = counters == null ? new HashMap<>() : new HashMap<>(counters);
+        newCounters.put(key, progress);
+        return new ProgressCounters(newCounters);
+    }
+
+    /**
+     * @return the counters with the progress of the key, unless the current one is ahead of it
+     */
+    public ProgressCounters withLatest(final String key, final TaskProgress progress) {
+        return progress.completedTasks() > get(key).completedTasks() ? with(key, progress) : this;
+    }
+
+    public ProgressCounters without(final String key) {
+        final Map<String, TaskProgress> newCounters = counters == null ? new HashMap<>() : new HashMap<>(counters);
+        newCounters.remove(key);
+        return new ProgressCounters(newCounters);
+    }
+
+    public TaskProgress total() {
+        TaskProgress total = TaskProgress.EMPTY;
+        if (counters != null) {
+            for (final TaskProgress progress : counters.values()) {
+                total = total.plus(progress);
+            }
+        }
+        return total;
+    }
+}
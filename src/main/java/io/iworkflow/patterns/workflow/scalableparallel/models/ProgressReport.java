@@ -0,0 +1,23 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * Reported by a ParentWorkflow to the RequestReceiverWorkflow of the tasks
+ * @param sourceKey           the run of the RequestReceiverWorkflow that the tasks belong to, see TaskRange.sourceKey
+ * @param parentWorkflowId    the workflow id of the parent
+ * @param parentWorkflowRunId the run id of the parent, as a parent completes when it's idle and is started again
+ *                            with the same workflow id, counting from 0
+ * @param progress            the cumulative progress of the tasks of the request in the parent run
+ */
+public record ProgressReport(
+        String sourceKey,
+        String parentWorkflowId,
+        String parentWorkflowRunId,
+        TaskProgress progress
+) {
+    /**
+     * @return the key of the counters of the parent run, see ProgressCounters
+     */
+    public String parentRunKey() {
+        return parentWorkflowId + "/" + parentWorkflowRunId;
+    }
+}
@@ -0,0 +1,14 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * A task range in the TASK_QUEUE or a lane of a ParentWorkflow
+ * @param range                   the tasks not started yet
+ * @param priority                the lane of the tasks
+ * @param enqueuedTimestampMillis when the range was enqueued, to report how long the tasks of a lane wait
+ */
+public record QueuedTaskRange(
+        TaskRange range,
+        TaskPriority priority,
+        long enqueuedTimestampMillis
+) {
+}
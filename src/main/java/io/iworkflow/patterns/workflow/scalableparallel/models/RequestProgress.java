@@ -0,0 +1,33 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * The progress of a scalable-parallel request across all the parents
+ * @param numTasks      the number of tasks of the request
+ * @param enqueuedTasks the number of tasks handed to the parents
+ * @param inFlightTasks the number of tasks handed to the parents but not completed yet, buffered or running
+ * @param doneTasks     the number of tasks processed successfully
+ * @param failedTasks   the number of tasks failed
+ * @param resultSum     the sum of the results of the done tasks
+ */
+public record RequestProgress(
+        long numTasks,
+        long enqueuedTasks,
+        long inFlightTasks,
+        long doneTasks,
+        long failedTasks,
+        long resultSum
+) {
+    public static RequestProgress of(final long numTasks, final long enqueuedTasks, final TaskProgress progress) {
+        return new RequestProgress(
+                numTasks,
+                enqueuedTasks,
+                Math.max(0, enqueuedTasks - progress.completedTasks()),
+                progress.doneTasks(),
+                progress.failedTasks(),
+                progress.resultSum());
+    }
+
+    public boolean allTasksCompleted() {
+        return doneTasks + failedTasks >= numTasks;
+    }
+}
@@ -0,0 +1,42 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.CONCURRENCY_PER_PARENT_WORKFLOW;
+import static io.iworkflow.patterns.workflow.scalableparallel.ParentWorkflow.NUM_PARENT_WORKFLOWS;
+
+/**
+ * The input of RequestReceiverWorkflow
+ * @param numTasks              the number of tasks to process
+ * @param numParentWorkflows    the number of parent workflows to spread the tasks across
+ * @param priority              the lane of the tasks in the parents, NORMAL by default
+ * @param maxBufferedTaskRanges the max number of task ranges buffered in the lane of a parent,
+ *                              the default of the priority if not positive. Capped by the parents to
+ *                              MAX_BUFFERED_TASK_RANGES_FACTOR times the default
+ * @param concurrencyControl    the concurrency control of a parent started for this request. A running parent keeps
+ *                              its own, which can be updated by the ParentWorkflow.updateConcurrencyControl RPC
+ */
+public record ScalableParallelRequest(
+        int numTasks,
+        int numParentWorkflows,
+        TaskPriority priority,
+        int maxBufferedTaskRanges,
+        ConcurrencyControl concurrencyControl
+) {
+    public ScalableParallelRequest {
+        if (numParentWorkflows < 1) {
+            throw new IllegalArgumentException("numParentWorkflows must be positive");
+        }
+        if (priority == null) {
+            priority = TaskPriority.NORMAL;
+        }
+        if (maxBufferedTaskRanges < 1) {
+            maxBufferedTaskRanges = priority.defaultMaxBufferedTaskRanges();
+        }
+        if (concurrencyControl == null) {
+            concurrencyControl = ConcurrencyControl.fixed(CONCURRENCY_PER_PARENT_WORKFLOW);
+        }
+    }
+
+    public static ScalableParallelRequest withDefaults(final int numTasks) {
+        return new ScalableParallelRequest(numTasks, NUM_PARENT_WORKFLOWS, null, 0, null);
+    }
+}
@@ -0,0 +1,163 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lanes of task ranges of a ParentWorkflow, one per {@link TaskPriority}, in the FIFO order within a lane.
+ * <p>
+ * The tasks are taken from the lanes by stride scheduling: each lane has a "pass", which advances by 1/weight for
+ * every task taken from it, and the next task is always taken from the lane with the lowest pass. A lane that was
+ * empty starts from the pass of the last task taken, so that it can't catch up on the time it was idle.
+ *
+ * @param lanes       the task ranges of each lane. The first range of a lane is split lazily as the tasks are taken
+ * @param passes      the pass of each lane
+ * @param virtualTime the pass of the lane of the last task taken
+ */
+public record TaskLanes(
+        Map<TaskPriority, List<QueuedTaskRange>> lanes,
+        Map<TaskPriority, Double> passes,
+        double virtualTime
+) {
+    public static final TaskLanes EMPTY = new TaskLanes(Map.of(), Map.of(), 0);
+
+    /**
+     * @param taskIds the ids of the tasks taken, in the order to start
+     * @param rest    the lanes after taking the tasks
+     */
+    public record Taken(List<String> taskIds, TaskLanes rest) {
+    }
+
+    public TaskLanes add(final QueuedTaskRange queuedTaskRange) {
+        if (queuedTaskRange.range().size() == 0) {
+            return this;
+        }
+        final TaskPriority priority = queuedTaskRange.priority();
+        final Map<TaskPriority, List<QueuedTaskRange>> newLanes = copyLanes();
+        final Map<TaskPriority, Double> newPasses = copyPasses();
+        if (lane(priority).isEmpty()) {
+            newPasses.put(priority, Math.max(pass(priority), virtualTime));
+        }
+        newLanes.computeIfAbsent(priority, p -> new ArrayList<>()).add(queuedTaskRange);
+        return new TaskLanes(newLanes, newPasses, virtualTime);
+    }
+
+    /**
+     * @param maxTasks the max number of tasks to take, e.g. the free concurrency
+     */
+    public Taken take(final int maxTasks) {
+        final Map<TaskPriority, List<QueuedTaskRange>> newLanes = copyLanes();
+        final Map<TaskPriority, Double> newPasses = copyPasses();
+        double newVirtualTime = virtualTime;
+        final List<String> taskIds = new ArrayList<>();
+
+        while (taskIds.size() < maxTasks) {
+            TaskPriority next = null;
+            for (final TaskPriority priority : TaskPriority.values()) {
+                final List<QueuedTaskRange> lane = newLanes.get(priority);
+                if (lane != null && !lane.isEmpty()
+                        && (next == null || newPasses.getOrDefault(priority, 0.0) < newPasses.getOrDefault(next, 0.0))) {
+                    next = priority;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            final List<QueuedTaskRange> lane = newLanes.get(next);
+            final QueuedTaskRange head = lane.get(0);
+            taskIds.add(head.range().taskId(head.range().startOffset()));
+            final TaskRange rest = head.range().skip(1);
+            if (rest.size() == 0) {
+                lane.remove(0);
+            } else {
+                lane.set(0, new QueuedTaskRange(rest, head.priority(), head.enqueuedTimestampMillis()));
+            }
+
+            newVirtualTime = newPasses.getOrDefault(next, 0.0);
+            newPasses.put(next, newVirtualTime + 1.0 / next.weight());
+        }
+        return new Taken(taskIds, new TaskLanes(newLanes, newPasses, newVirtualTime));
+    }
+
+    public int numTaskRanges(final TaskPriority priority) {
+        return lane(priority).size();
+    }
+
+    public int pendingTasks() {
+        int pendingTasks = 0;
+        for (final TaskPriority priority : TaskPriority.values()) {
+            pendingTasks += pendingTasks(priority);
+        }
+        return pendingTasks;
+    }
+
+    /**
+     * @param tasksPerMilli how fast the parent starts the tasks of all the lanes
+     * @return the estimated time until all the tasks in the lane are started, by the share of the lane
+     */
+    public long estimateDrainMillis(final TaskPriority priority, final double tasksPerMilli) {
+        return estimateMillis(pendingTasks(priority), priority, tasksPerMilli);
+    }
+
+    /**
+     * @return the estimated time until the first task range of the lane is used up, so that the lane can take another one
+     */
+    public long estimateHeadDrainMillis(final TaskPriority priority, final double tasksPerMilli) {
+        final List<QueuedTaskRange> lane = lane(priority);
+        return lane.isEmpty() ? 0 : estimateMillis(lane.get(0).range().size(), priority, tasksPerMilli);
+    }
+
+    public Map<TaskPriority, LaneLoad> laneLoads(final long nowMillis) {
+        final Map<TaskPriority, LaneLoad> laneLoads = new EnumMap<>(TaskPriority.class);
+        for (final TaskPriority priority : TaskPriority.values()) {
+            final List<QueuedTaskRange> lane = lane(priority);
+            laneLoads.put(priority, new LaneLoad(
+                    lane.size(),
+                    pendingTasks(priority),
+                    lane.isEmpty() ? 0 : Math.max(0, nowMillis - lane.get(0).enqueuedTimestampMillis())));
+        }
+        return laneLoads;
+    }
+
+    private long estimateMillis(final int numTasks, final TaskPriority priority, final double tasksPerMilli) {
+        // the lanes with tasks share the pace by their weights
+        int totalWeight = priority.weight();
+        for (final TaskPriority other : TaskPriority.values()) {
+            if (other != priority && !lane(other).isEmpty()) {
+                totalWeight += other.weight();
+            }
+        }
+        return (long) Math.ceil(numTasks / (tasksPerMilli * priority.weight() / totalWeight));
+    }
+
+    private int pendingTasks(final TaskPriority priority) {
+        return lane(priority).stream().mapToInt(queuedTaskRange -> queuedTaskRange.range().size()).sum();
+    }
+
+    private List<QueuedTaskRange> lane(final TaskPriority priority) {
+        return lanes == null ? List.of() : lanes.getOrDefault(priority, List.of());
+    }
+
+    private double pass(final TaskPriority priority) {
+        return passes == null ? 0 : passes.getOrDefault(priority, 0.0);
+    }
+
+    private Map<TaskPriority, List<QueuedTaskRange>> copyLanes() {
+        final Map<TaskPriority, List<QueuedTaskRange>> copy = new EnumMap<>(TaskPriority.class);
+        if (lanes != null) {
+            lanes.forEach((priority, lane) -> copy.put(priority, new ArrayList<>(lane)));
+        }
+        return copy;
+    }
+
+    private Map<TaskPriority, Double> copyPasses() {
+        final Map<TaskPriority, Double> copy = new EnumMap<>(TaskPriority.class);
+        if (passes != null) {
+            copy.putAll(passes);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,34 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * The priority class of the tasks of a request. Each priority has its own lane in a ParentWorkflow.
+ * <p>
+ * When a parent has free concurrency, the lanes with tasks share it by their weights(weighted-fair), e.g. when all the
+ * lanes have tasks, HIGH gets 8 of every 13 child workflows started, NORMAL 4 and LOW 1. So the urgent tasks don't
+ * wait behind a large low-priority batch, while LOW still makes progress.
+ */
+public enum TaskPriority {
+    HIGH(8, 5),
+    NORMAL(4, 10),
+    LOW(1, 20);
+
+    private final int weight;
+    private final int defaultMaxBufferedTaskRanges;
+
+    TaskPriority(final int weight, final int defaultMaxBufferedTaskRanges) {
+        this.weight = weight;
+        this.defaultMaxBufferedTaskRanges = defaultMaxBufferedTaskRanges;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * The max number of task ranges buffered in the lane of a parent, unless set by the request.
+     * This is limited by the max history size per workflow. A task range can have any number of tasks.
+     */
+    public int defaultMaxBufferedTaskRanges() {
+        return defaultMaxBufferedTaskRanges;
+    }
+}
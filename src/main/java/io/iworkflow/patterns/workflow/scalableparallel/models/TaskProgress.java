@@ -0,0 +1,29 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * The counts of the completed tasks, and the aggregation of their results
+ * @param doneTasks   the number of tasks processed successfully
+ * @param failedTasks the number of tasks failed
+ * @param resultSum   the sum of the results of the done tasks, e.g. the number of records processed
+ */
+public record TaskProgress(
+        long doneTasks,
+        long failedTasks,
+        long resultSum
+) {
+    public static final TaskProgress EMPTY = new TaskProgress(0, 0, 0);
+
+    public long completedTasks() {
+        return doneTasks + failedTasks;
+    }
+
+    public TaskProgress plus(final ChildCompletion completion) {
+        return completion.succeeded()
+                ? new TaskProgress(doneTasks + 1, failedTasks, resultSum + completion.result())
+                : new TaskProgress(doneTasks, failedTasks + 1, resultSum);
+    }
+
+    public TaskProgress plus(final TaskProgress other) {
+        return new TaskProgress(doneTasks + other.doneTasks, failedTasks + other.failedTasks, resultSum + other.resultSum);
+    }
+}
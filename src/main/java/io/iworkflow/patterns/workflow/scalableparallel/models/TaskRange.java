@@ -0,0 +1,77 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+/**
+ * A contiguous range of tasks of a request, e.g. a range of lines of a CSV file.
+ * It is split into single tasks by the parent workflow, only as child workflows can be started.
+ * @param sourceId    identifies the source of the tasks, e.g. the file. The RequestReceiverWorkflow id, to route to
+ * @param sourceRunId the run id of the source, so that a source started again with the same id has different task ids
+ * @param startOffset the offset of the first task, inclusive
+ * @param endOffset   the offset after the last task, exclusive
+ */
+public record TaskRange(
+        String sourceId,
+        String sourceRunId,
+        int startOffset,
+        int endOffset
+) {
+    public TaskRange {
+        if (startOffset > endOffset) {
+            throw new IllegalArgumentException("startOffset is greater than endOffset");
+        }
+    }
+
+    public int size() {
+        return endOffset - startOffset;
+    }
+
+    /**
+     * @return the id of the task at the offset, "{sourceKey}-{offset}", which is stable so that the child workflow id
+     * is the same when retried
+     */
+    public String taskId(final int offset) {
+        return sourceKey(sourceId, sourceRunId) + "-" + offset;
+    }
+
+    /**
+     * @return "{sourceId}-{sourceRunId without dashes}", the prefix of the task ids of the source run
+     */
+    public static String sourceKey(final String sourceId, final String sourceRunId) {
+        return sourceId + "-" + sourceRunId.replace("-", "");
+    }
+
+    /**
+     * @return the sourceKey of a task id created by {@link #taskId(int)}
+     */
+    public static String sourceKeyOf(final String taskId) {
+        return beforeLastSeparator(taskId);
+    }
+
+    /**
+     * @return the sourceId of a sourceKey created by {@link #sourceKey(String, String)}
+     */
+    public static String sourceIdOfKey(final String sourceKey) {
+        return beforeLastSeparator(sourceKey);
+    }
+
+    /**
+     * @return the sourceId of a task id created by {@link #taskId(int)}
+     */
+    public static String sourceIdOf(final String taskId) {
+        return sourceIdOfKey(sourceKeyOf(taskId));
+    }
+
+    /**
+     * @return the rest of the range after taking the first numTasks tasks
+     */
+    public TaskRange skip(final int numTasks) {
+        return new TaskRange(sourceId, sourceRunId, Math.min(startOffset + numTasks, endOffset), endOffset);
+    }
+
+    private static String beforeLastSeparator(final String id) {
+        final int separator = id.lastIndexOf('-');
+        if (separator < 0) {
+            throw new IllegalArgumentException("not a task id: " + id);
+        }
+        return id.substring(0, separator);
+    }
+}
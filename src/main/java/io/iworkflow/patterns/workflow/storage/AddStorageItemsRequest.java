@@ -0,0 +1,11 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import java.util.List;
+
+public record AddStorageItemsRequest(List<AddStorageItemRequest> items) {
+    public AddStorageItemsRequest {
+        if (items == null) {
+            throw new IllegalArgumentException("items is null");
+        }
+    }
+}
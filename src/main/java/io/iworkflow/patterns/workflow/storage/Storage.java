@@ -21,10 +21,15 @@ public record Storage(Map<String, String> storageData) {
     /**
      * Add a key-value pair to the storage
      * @param key the key to add
-     * @param value the value to add
+     * @param value the value to add. A null value removes the key, as the writes of the sharded storage do, so that a
+     *              key is either absent or has a value in both modes
      */
     public void addItem(String key, String value) {
-        storageData.put(key, value);
+        if (value == null) {
+            storageData.remove(key);
+        } else {
+            storageData.put(key, value);
+        }
     }
 
     /**
@@ -0,0 +1,428 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import io.iworkflow.core.Client;
+import io.iworkflow.core.RpcDefinitions;
+import io.iworkflow.core.exceptions.NoRunningWorkflowException;
+import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Invokes the storage workflow RPCs for the storage endpoints, and starts each storage workflow once, the first time
+ * that it's used. After that, an operation is a single RPC, unless the storage workflow was closed in the meantime.
+ * <p>
+ * With numWorkflowShards = 0, all the items are in the singleton storage workflow. Otherwise, each item is routed to
+ * its shard by {@link StorageShardRouter}.
+ * <p>
+ * The multi-item operations use one RPC per shard, so that a storage data attribute is only locked, decoded and encoded
+ * once for many items. As every write RPC rewrites the whole data attribute, the writes are only split when their
+ * payload exceeds {@link #MAX_WRITE_PAYLOAD_CHARS}, while the reads are split per {@link #MAX_ITEMS_PER_RPC} items.
+ * <p>
+ * Optionally, the reads go through a local cache of bounded size and TTL(including the absent items). The writes made
+ * through this client invalidate their keys, but writes from other application instances are only seen after the TTL,
+ * unless reading with strong consistency, which also bypasses the caching of iWF server.
+ * <p>
+ * A read that races with a write of the same key could put the old value back into the cache after the write
+ * invalidated it, and right after a write, the caching of iWF server may still return the old value. So for
+ * {@link #RECENT_WRITE_WINDOW} after a write, the key is read with strong consistency and is not cached, and a read
+ * only caches its value if no write of the key started in the meantime.
+ */
+public class StorageClient {
+    private static final int TIMEOUT_SECONDS = 3600;
+    // Keeps the RPC payloads well below the size limit of iWF server
+    public static final int MAX_ITEMS_PER_RPC = 1000;
+    // Each write RPC rewrites the whole data attribute(up to its 4MB limit), so splitting the writes by a number of items
+    // would rewrite it O(items / chunk) times. Split by payload size instead, which is at most a few RPCs for a full
+    // data attribute, while staying below the size limit of iWF server
+    public static final int MAX_WRITE_PAYLOAD_CHARS = 1024 * 1024;
+    // Much longer than an RPC, so that a read that started before a write has completed when the write is forgotten
+    private static final Duration RECENT_WRITE_WINDOW = Duration.ofSeconds(10);
+    private static final int NUM_KEY_LOCKS = 64;
+
+    private final Client iwfClient;
+    // null when not sharded
+    private final StorageShardRouter router;
+    // null when not caching
+    private final Cache<String, Optional<String>> cache;
+    // The keys written through this client within the RECENT_WRITE_WINDOW, null when not caching
+    private final Cache<String, Boolean> recentWrites;
+    // Makes checking recentWrites and then caching a value atomic with respect to the invalidation by a write
+    private final Striped<Lock> keyLocks = Striped.lock(NUM_KEY_LOCKS);
+    // The storage workflows that are known to be started by this client, or are being started
+    private final ConcurrentMap<String, CompletableFuture<Void>> startedWorkflows = new ConcurrentHashMap<>();
+
+    public StorageClient(final Client iwfClient, final int numWorkflowShards) {
+        this(iwfClient, numWorkflowShards, 0, Duration.ZERO, null);
+    }
+
+    /**
+     * @param cacheMaxSize  the max number of cached items, 0 to disable the cache
+     * @param cacheTtl      how long an item is cached after it is read
+     * @param meterRegistry exposes the cache metrics(cache.gets, cache.evictions, etc. with cache=storage)
+     */
+    public StorageClient(final Client iwfClient, final int numWorkflowShards,
+                         final long cacheMaxSize, final Duration cacheTtl, final MeterRegistry meterRegistry) {
+        this.iwfClient = iwfClient;
+        this.router = numWorkflowShards > 0 ? new StorageShardRouter(numWorkflowShards) : null;
+        if (cacheMaxSize > 0) {
+            this.cache = CacheBuilder.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(cacheTtl)
+                    .recordStats()
+                    .build();
+            GuavaCacheMetrics.monitor(meterRegistry, cache, "storage");
+            this.recentWrites = CacheBuilder.newBuilder()
+                    .expireAfterWrite(RECENT_WRITE_WINDOW)
+                    .build();
+        } else {
+            this.cache = null;
+            this.recentWrites = null;
+        }
+    }
+
+    public boolean isSharded() {
+        return router != null;
+    }
+
+    public void addItem(final AddStorageItemRequest request) {
+        markWritten(List.of(request.key()));
+        try {
+            doAddItem(request);
+        } finally {
+            invalidate(List.of(request.key()));
+        }
+    }
+
+    private void doAddItem(final AddStorageItemRequest request) {
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStub::addItem, request);
+        } else {
+            writeShards(List.of(new StorageWriteRequest(request.key(), request.value())));
+        }
+    }
+
+    /**
+     * @param itemKey           the key of the item
+     * @param strongConsistency true to skip the local cache and the caching of iWF server, so that the item reflects
+     *                          all the completed writes
+     * @return the value of the item, or null if it doesn't exist
+     */
+    public String getItem(final String itemKey, final boolean strongConsistency) {
+        if (cache == null) {
+            return doGetItem(itemKey, strongConsistency);
+        }
+        if (!strongConsistency) {
+            final Optional<String> cached = cache.getIfPresent(itemKey);
+            if (cached != null) {
+                return cached.orElse(null);
+            }
+        }
+        if (recentWrites.getIfPresent(itemKey) != null) {
+            // the caching of iWF server may still return the value before the write
+            return doGetItem(itemKey, true);
+        }
+        final String value = doGetItem(itemKey, strongConsistency);
+        cacheIfNotWritten(itemKey, value);
+        return value;
+    }
+
+    private String doGetItem(final String itemKey, final boolean strongConsistency) {
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            final RpcDefinitions.RpcFunc1<String, String> rpcStubMethod = strongConsistency
+                    ? rpcStub::getItemWithStrongConsistency : rpcStub::getItem;
+            return invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStubMethod, itemKey);
+        }
+        final StorageShardRouter.StorageShard shard = router.getShard(itemKey);
+        final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, shard.workflowId());
+        final Storage found = invokeStorageRpc(shard.workflowId(),
+                StorageWorkflow.getShardItemsRpc(rpcStub, shard.attributeShard(), strongConsistency),
+                new StorageKeysRequest(List.of(itemKey)));
+        return found.getItem(itemKey);
+    }
+
+    public void removeItem(final String itemKey) {
+        markWritten(List.of(itemKey));
+        try {
+            doRemoveItem(itemKey);
+        } finally {
+            invalidate(List.of(itemKey));
+        }
+    }
+
+    private void doRemoveItem(final String itemKey) {
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStub::removeItem, itemKey);
+        } else {
+            writeShards(List.of(new StorageWriteRequest(itemKey, null)));
+        }
+    }
+
+    public void addItems(final List<AddStorageItemRequest> items) {
+        markWritten(Lists.transform(items, AddStorageItemRequest::key));
+        try {
+            doAddItems(items);
+        } finally {
+            invalidate(Lists.transform(items, AddStorageItemRequest::key));
+        }
+    }
+
+    private void doAddItems(final List<AddStorageItemRequest> items) {
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            for (final List<AddStorageItemRequest> chunk : partitionByPayload(items, item -> item.key().length() + item.value().length())) {
+                invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStub::addItems, new AddStorageItemsRequest(chunk));
+            }
+        } else {
+            final List<StorageWriteRequest> writes = new ArrayList<>(items.size());
+            items.forEach(item -> writes.add(new StorageWriteRequest(item.key(), item.value())));
+            writeShards(writes);
+        }
+    }
+
+    /**
+     * @param itemKeys the keys of the items to get
+     * @return the items that exist
+     */
+    public Map<String, String> getItems(final List<String> itemKeys) {
+        if (cache == null) {
+            return doGetItems(itemKeys);
+        }
+        final Map<String, String> items = new HashMap<>();
+        final Map<String, Optional<String>> cached = cache.getAllPresent(itemKeys);
+        cached.forEach((key, value) -> value.ifPresent(v -> items.put(key, v)));
+        final List<String> missedKeys = new ArrayList<>();
+        for (final String itemKey : itemKeys) {
+            if (cached.containsKey(itemKey)) {
+                continue;
+            }
+            if (recentWrites.getIfPresent(itemKey) != null) {
+                // there is no multi-item RPC with strong consistency, and only a few keys are expected to be this recent
+                final String value = doGetItem(itemKey, true);
+                if (value != null) {
+                    items.put(itemKey, value);
+                }
+            } else {
+                missedKeys.add(itemKey);
+            }
+        }
+        if (!missedKeys.isEmpty()) {
+            final Map<String, String> found = doGetItems(missedKeys);
+            missedKeys.forEach(key -> cacheIfNotWritten(key, found.get(key)));
+            items.putAll(found);
+        }
+        return items;
+    }
+
+    private Map<String, String> doGetItems(final List<String> itemKeys) {
+        final Map<String, String> items = new HashMap<>();
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            for (final List<String> chunk : Lists.partition(itemKeys, MAX_ITEMS_PER_RPC)) {
+                final Storage found = invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStub::getItems, new StorageKeysRequest(chunk));
+                items.putAll(found.storageData());
+            }
+            return items;
+        }
+
+        // one RPC per attribute shard, which only loads its data attribute
+        final Map<StorageShardRouter.StorageShard, List<String>> keysByShard = new LinkedHashMap<>();
+        for (final String itemKey : itemKeys) {
+            keysByShard.computeIfAbsent(router.getShard(itemKey), k -> new ArrayList<>()).add(itemKey);
+        }
+        keysByShard.forEach((shard, shardKeys) -> {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, shard.workflowId());
+            final RpcDefinitions.RpcFunc1<StorageKeysRequest, Storage> rpcStubMethod =
+                    StorageWorkflow.getShardItemsRpc(rpcStub, shard.attributeShard(), false);
+            for (final List<String> chunk : Lists.partition(shardKeys, MAX_ITEMS_PER_RPC)) {
+                final Storage found = invokeStorageRpc(shard.workflowId(), rpcStubMethod, new StorageKeysRequest(chunk));
+                items.putAll(found.storageData());
+            }
+        });
+        return items;
+    }
+
+    public void removeItems(final List<String> itemKeys) {
+        markWritten(itemKeys);
+        try {
+            doRemoveItems(itemKeys);
+        } finally {
+            invalidate(itemKeys);
+        }
+    }
+
+    private void doRemoveItems(final List<String> itemKeys) {
+        if (router == null) {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, StorageWorkflow.getStorageWorkflowId());
+            for (final List<String> chunk : partitionByPayload(itemKeys, String::length)) {
+                invokeStorageRpc(StorageWorkflow.getStorageWorkflowId(), rpcStub::removeItems, new StorageKeysRequest(chunk));
+            }
+        } else {
+            final List<StorageWriteRequest> writes = new ArrayList<>(itemKeys.size());
+            itemKeys.forEach(itemKey -> writes.add(new StorageWriteRequest(itemKey, null)));
+            writeShards(writes);
+        }
+    }
+
+    private void markWritten(final List<String> itemKeys) {
+        if (cache == null) {
+            return;
+        }
+        // no lock needed: a value read before this is still removed by the invalidation after the write
+        itemKeys.forEach(itemKey -> recentWrites.put(itemKey, Boolean.TRUE));
+    }
+
+    private void invalidate(final List<String> itemKeys) {
+        if (cache == null) {
+            return;
+        }
+        for (final String itemKey : itemKeys) {
+            final Lock lock = keyLocks.get(itemKey);
+            lock.lock();
+            try {
+                // marked again, so that the window starts when the write has completed
+                recentWrites.put(itemKey, Boolean.TRUE);
+                cache.invalidate(itemKey);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Caches a value that was read without a recent write of its key. If a write started while reading, the value
+     * may be older than the write, so it is not cached.
+     */
+    private void cacheIfNotWritten(final String itemKey, final String value) {
+        final Lock lock = keyLocks.get(itemKey);
+        lock.lock();
+        try {
+            if (recentWrites.getIfPresent(itemKey) == null) {
+                cache.put(itemKey, Optional.ofNullable(value));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Groups the writes by shard, keeping their order within a shard, and sends one write RPC per shard.
+     */
+    private void writeShards(final List<StorageWriteRequest> writes) {
+        final Map<StorageShardRouter.StorageShard, List<StorageWriteRequest>> writesByShard = new LinkedHashMap<>();
+        for (final StorageWriteRequest write : writes) {
+            writesByShard.computeIfAbsent(router.getShard(write.key()), k -> new ArrayList<>()).add(write);
+        }
+        writesByShard.forEach((shard, shardWrites) -> {
+            final StorageWorkflow rpcStub = iwfClient.newRpcStub(StorageWorkflow.class, shard.workflowId());
+            final RpcDefinitions.RpcProc1<StorageWriteBatch> rpcStubMethod = StorageWorkflow.getWriteShardRpc(rpcStub, shard.attributeShard());
+            for (final List<StorageWriteRequest> chunk : partitionByPayload(shardWrites,
+                    write -> write.key().length() + (write.value() == null ? 0 : write.value().length()))) {
+                invokeStorageRpc(shard.workflowId(), rpcStubMethod, new StorageWriteBatch(chunk));
+            }
+        });
+    }
+
+    /**
+     * Splits the writes into consecutive chunks of at most {@link #MAX_WRITE_PAYLOAD_CHARS}(estimated by the given
+     * size of each write), keeping their order. A write larger than the limit is a chunk on its own.
+     */
+    static <T> List<List<T>> partitionByPayload(final List<T> writes, final ToIntFunction<T> payloadChars) {
+        final List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>();
+        long chunkChars = 0;
+        for (final T write : writes) {
+            final int writeChars = payloadChars.applyAsInt(write);
+            if (!chunk.isEmpty() && chunkChars + writeChars > MAX_WRITE_PAYLOAD_CHARS) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkChars = 0;
+            }
+            chunk.add(write);
+            chunkChars += writeChars;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private <I> void invokeStorageRpc(String workflowId, RpcDefinitions.RpcProc1<I> rpcStubMethod, I input) {
+        final CompletableFuture<Void> started = ensureStarted(workflowId);
+        try {
+            iwfClient.invokeRPC(rpcStubMethod, input);
+        } catch (final NoRunningWorkflowException e) {
+            // The storage workflow is closed(e.g. timed out) since it was started, so start it again
+            startedWorkflows.remove(workflowId, started);
+            ensureStarted(workflowId);
+            iwfClient.invokeRPC(rpcStubMethod, input);
+        }
+    }
+
+    private <I, O> O invokeStorageRpc(String workflowId, RpcDefinitions.RpcFunc1<I, O> rpcStubMethod, I input) {
+        final CompletableFuture<Void> started = ensureStarted(workflowId);
+        try {
+            return iwfClient.invokeRPC(rpcStubMethod, input);
+        } catch (final NoRunningWorkflowException e) {
+            // The storage workflow is closed(e.g. timed out) since it was started, so start it again
+            startedWorkflows.remove(workflowId, started);
+            ensureStarted(workflowId);
+            return iwfClient.invokeRPC(rpcStubMethod, input);
+        }
+    }
+
+    /**
+     * Starts the storage workflow the first time that it's used. Concurrent callers wait for the same start attempt,
+     * and later callers return right away. A failed start is attempted again by the next caller.
+     * @param workflowId the storage workflow id
+     * @return the completed start attempt
+     */
+    private CompletableFuture<Void> ensureStarted(final String workflowId) {
+        CompletableFuture<Void> started = startedWorkflows.get(workflowId);
+        if (started == null) {
+            final CompletableFuture<Void> attempt = new CompletableFuture<>();
+            started = startedWorkflows.putIfAbsent(workflowId, attempt);
+            if (started == null) {
+                started = attempt;
+                try {
+                    iwfClient.startWorkflow(StorageWorkflow.class, workflowId, TIMEOUT_SECONDS, null);
+                    attempt.complete(null);
+                } catch (final WorkflowAlreadyStartedException e) {
+                    // Started by another application instance, or before this one restarted
+                    attempt.complete(null);
+                } catch (final RuntimeException e) {
+                    startedWorkflows.remove(workflowId, attempt);
+                    attempt.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            started.join();
+        } catch (final CompletionException e) {
+            // The start attempt of another caller failed
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return started;
+    }
+}
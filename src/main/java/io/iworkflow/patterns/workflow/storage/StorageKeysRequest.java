@@ -0,0 +1,11 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import java.util.List;
+
+public record StorageKeysRequest(List<String> keys) {
+    public StorageKeysRequest {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys is null");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Routes storage keys to the shards of the sharded storage. A key is consistent-hashed to one of the storage
+ * workflows, then hashed to one of the {@link StorageWorkflow#NUM_ATTRIBUTE_SHARDS} data attributes of that workflow.
+ * Changing the number of workflows routes about 1/N of the keys to a different workflow. Nothing migrates their
+ * existing items, so these become unreadable unless migrated.
+ */
+public class StorageShardRouter {
+    // More virtual nodes spread the keys more evenly across the workflows
+    private static final int VIRTUAL_NODES_PER_WORKFLOW = 128;
+    private static final HashFunction WORKFLOW_HASH = Hashing.murmur3_32_fixed();
+    // A different seed, so that the keys of a workflow are spread across all its attribute shards
+    private static final HashFunction ATTRIBUTE_HASH = Hashing.murmur3_32_fixed(1);
+
+    private final int numWorkflows;
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+
+    public StorageShardRouter(final int numWorkflows) {
+        if (numWorkflows <= 0) {
+            throw new IllegalArgumentException("numWorkflows must be positive");
+        }
+        this.numWorkflows = numWorkflows;
+        for (int workflowShard = 0; workflowShard < numWorkflows; workflowShard++) {
+            for (int node = 0; node < VIRTUAL_NODES_PER_WORKFLOW; node++) {
+                ring.put(hash(WORKFLOW_HASH, "shard-" + workflowShard + "-" + node), workflowShard);
+            }
+        }
+    }
+
+    public int getNumWorkflows() {
+        return numWorkflows;
+    }
+
+    /**
+     * @param key the storage key
+     * @return the shard that holds the key
+     */
+    public StorageShard getShard(final String key) {
+        final Map.Entry<Integer, Integer> entry = ring.ceilingEntry(hash(WORKFLOW_HASH, key));
+        final int workflowShard = entry == null ? ring.firstEntry().getValue() : entry.getValue();
+        final int attributeShard = Math.floorMod(hash(ATTRIBUTE_HASH, key), StorageWorkflow.NUM_ATTRIBUTE_SHARDS);
+        return new StorageShard(StorageWorkflow.getStorageWorkflowId(workflowShard), attributeShard);
+    }
+
+    /**
+     * @return the ids of all the storage workflows
+     */
+    public List<String> getAllWorkflowIds() {
+        final List<String> workflowIds = new ArrayList<>(numWorkflows);
+        for (int workflowShard = 0; workflowShard < numWorkflows; workflowShard++) {
+            workflowIds.add(StorageWorkflow.getStorageWorkflowId(workflowShard));
+        }
+        return workflowIds;
+    }
+
+    private static int hash(final HashFunction hashFunction, final String value) {
+        return hashFunction.hashString(value, StandardCharsets.UTF_8).asInt();
+    }
+
+    /**
+     * @param workflowId     the id of the storage workflow
+     * @param attributeShard the data attribute shard within the workflow, from 0 to NUM_ATTRIBUTE_SHARDS - 1
+     */
+    public record StorageShard(String workflowId, int attributeShard) {
+    }
+}
@@ -3,6 +3,7 @@ package io.iworkflow.patterns.workflow.storage;
 import io.iworkflow.core.Context;
 import io.iworkflow.core.ObjectWorkflow;
 import io.iworkflow.core.RPC;
+import io.iworkflow.core.RpcDefinitions;
 import io.iworkflow.core.StateDef;
 import io.iworkflow.core.communication.Communication;
 import io.iworkflow.core.persistence.DataAttributeDef;
@@ -10,15 +11,29 @@ import io.iworkflow.core.persistence.Persistence;
 import io.iworkflow.core.persistence.PersistenceFieldDef;
 import io.iworkflow.gen.models.PersistenceLoadingType;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * A singleton workflow that acts as storage. Limited to 4MB storage.
+ * <p>
+ * In the sharded mode (see {@link StorageShardRouter}), there are multiple storage workflows, and each of them splits
+ * its keys across {@link #NUM_ATTRIBUTE_SHARDS} data attributes. A write only locks and rewrites the data attribute of
+ * its key, so writes to different shards don't wait for each other.
  */
 public class StorageWorkflow implements ObjectWorkflow {
     private static final String DA_STORE = "Store";
 
+    // To add an attribute shard, add its data attribute here, and its RPCs to SHARD_RPCS
+    private static final String DA_STORE_SHARD_0 = "StoreShard0";
+    private static final String DA_STORE_SHARD_1 = "StoreShard1";
+    private static final String DA_STORE_SHARD_2 = "StoreShard2";
+    private static final String DA_STORE_SHARD_3 = "StoreShard3";
+    private static final List<String> DA_STORE_SHARDS = List.of(DA_STORE_SHARD_0, DA_STORE_SHARD_1, DA_STORE_SHARD_2, DA_STORE_SHARD_3);
+    public static final int NUM_ATTRIBUTE_SHARDS = DA_STORE_SHARDS.size();
+
     /**
      * Static getter to fetch the singleton workflow id based on the staging level.
      * @return the storage workflow id
@@ -27,6 +42,15 @@ public class StorageWorkflow implements ObjectWorkflow {
         return String.format("sample-storage-%s", "test");
     }
 
+    /**
+     * Static getter to fetch the workflow id of a shard of the sharded storage.
+     * @param workflowShard the shard, from 0 to the number of storage workflows - 1
+     * @return the storage workflow id of the shard
+     */
+    public static String getStorageWorkflowId(final int workflowShard) {
+        return String.format("%s-shard-%d", getStorageWorkflowId(), workflowShard);
+    }
+
     /**
      * Returns the list of states defined in the workflow.
      * @return a list of StateDef objects representing the workflow states.
@@ -39,12 +63,15 @@ public class StorageWorkflow implements ObjectWorkflow {
 
     /**
      * Returns the persistence schema for the workflow.
-     * This schema includes a data attribute for the storage class.
+     * This schema includes a data attribute for the storage class, and one per attribute shard for the sharded mode.
      * @return a list of PersistenceFieldDef objects representing the persistence schema.
      */
     @Override
     public List<PersistenceFieldDef> getPersistenceSchema() {
-        return List.of(DataAttributeDef.create(Storage.class, DA_STORE));
+        final List<PersistenceFieldDef> schema = new ArrayList<>();
+        schema.add(DataAttributeDef.create(Storage.class, DA_STORE));
+        DA_STORE_SHARDS.forEach(key -> schema.add(DataAttributeDef.create(Storage.class, key)));
+        return schema;
     }
 
     /**
@@ -74,12 +101,21 @@ public class StorageWorkflow implements ObjectWorkflow {
      * @param communication the communication interface for workflow interactions.
      * @return the value of the item if it exists, null otherwise.
      */
-    @RPC
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE})
     public String getItem(Context context, String itemKey, Persistence persistence, Communication communication) {
         final Storage storage = persistence.getDataAttribute(DA_STORE, Storage.class);
         return storage == null ? null : storage.getItem(itemKey);
     }
 
+    /**
+     * Same as {@link #getItem}, but bypasses the caching of iWF server, so that it reflects all the completed writes.
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE},
+            bypassCachingForStrongConsistency = true)
+    public String getItemWithStrongConsistency(Context context, String itemKey, Persistence persistence, Communication communication) {
+        return this.getItem(context, itemKey, persistence, communication);
+    }
+
     /**
      * Remove an item from the storage. Locking the storage data attribute because we are reading and then setting the data
      * in this method.
@@ -96,4 +132,211 @@ public class StorageWorkflow implements ObjectWorkflow {
             persistence.setDataAttribute(DA_STORE, storage);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds multiple items to the storage, with one lock and one update of the storage data attribute.
+     * @param context the workflow context.
+     * @param request the items to add.
+     * @param persistence the persistence interface for managing workflow data.
+     * @param communication the communication interface for workflow interactions.
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE})
+    public void addItems(Context context, AddStorageItemsRequest request, Persistence persistence, Communication communication) {
+        Storage storage = persistence.getDataAttribute(DA_STORE, Storage.class);
+        if (storage == null) {
+            storage = new Storage();
+        }
+        for (final AddStorageItemRequest item : request.items()) {
+            storage.addItem(item.key(), item.value());
+        }
+        persistence.setDataAttribute(DA_STORE, storage);
+    }
+
+    /**
+     * Retrieves multiple storage items. Read-only, so no locking.
+     * @param context the workflow context.
+     * @param request the keys of the items to retrieve.
+     * @param persistence the persistence interface for managing workflow data.
+     * @param communication the communication interface for workflow interactions.
+     * @return the items that exist, wrapped in a Storage.
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE})
+    public Storage getItems(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        final Storage storage = persistence.getDataAttribute(DA_STORE, Storage.class);
+        final Storage items = new Storage();
+        if (storage != null) {
+            request.keys().forEach(key -> {
+                final String value = storage.getItem(key);
+                if (value != null) {
+                    items.addItem(key, value);
+                }
+            });
+        }
+        return items;
+    }
+
+    /**
+     * Removes multiple items from the storage, with one lock and one update of the storage data attribute.
+     * @param context the workflow context.
+     * @param request the keys of the items to remove.
+     * @param persistence the persistence interface for managing workflow data.
+     * @param communication the communication interface for workflow interactions.
+     */
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE})
+    public void removeItems(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        final Storage storage = persistence.getDataAttribute(DA_STORE, Storage.class);
+        if (storage != null) {
+            request.keys().forEach(storage::removeItem);
+            persistence.setDataAttribute(DA_STORE, storage);
+        }
+    }
+
+    // The locking and loading keys of an RPC are static, so each attribute shard has its own RPCs, which only lock or load
+    // its data attribute. These are one-liners, and the table below is the only place that maps a shard to them.
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE_SHARD_0})
+    public void writeShard0(Context context, StorageWriteBatch batch, Persistence persistence, Communication communication) {
+        writeShard(DA_STORE_SHARD_0, batch, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE_SHARD_1})
+    public void writeShard1(Context context, StorageWriteBatch batch, Persistence persistence, Communication communication) {
+        writeShard(DA_STORE_SHARD_1, batch, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE_SHARD_2})
+    public void writeShard2(Context context, StorageWriteBatch batch, Persistence persistence, Communication communication) {
+        writeShard(DA_STORE_SHARD_2, batch, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITH_EXCLUSIVE_LOCK, dataAttributesLockingKeys = {DA_STORE_SHARD_3})
+    public void writeShard3(Context context, StorageWriteBatch batch, Persistence persistence, Communication communication) {
+        writeShard(DA_STORE_SHARD_3, batch, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_0})
+    public Storage getShard0Items(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_0, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_1})
+    public Storage getShard1Items(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_1, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_2})
+    public Storage getShard2Items(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_2, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_3})
+    public Storage getShard3Items(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_3, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_0},
+            bypassCachingForStrongConsistency = true)
+    public Storage getShard0ItemsWithStrongConsistency(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_0, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_1},
+            bypassCachingForStrongConsistency = true)
+    public Storage getShard1ItemsWithStrongConsistency(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_1, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_2},
+            bypassCachingForStrongConsistency = true)
+    public Storage getShard2ItemsWithStrongConsistency(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_2, request, persistence);
+    }
+
+    @RPC(dataAttributesLoadingType = PersistenceLoadingType.PARTIAL_WITHOUT_LOCKING, dataAttributesPartialLoadingKeys = {DA_STORE_SHARD_3},
+            bypassCachingForStrongConsistency = true)
+    public Storage getShard3ItemsWithStrongConsistency(Context context, StorageKeysRequest request, Persistence persistence, Communication communication) {
+        return getShardItems(DA_STORE_SHARD_3, request, persistence);
+    }
+
+    /**
+     * The RPCs of each attribute shard, in the order of DA_STORE_SHARDS
+     */
+    private record ShardRpcs(
+            Function<StorageWorkflow, RpcDefinitions.RpcProc1<StorageWriteBatch>> write,
+            Function<StorageWorkflow, RpcDefinitions.RpcFunc1<StorageKeysRequest, Storage>> getItems,
+            Function<StorageWorkflow, RpcDefinitions.RpcFunc1<StorageKeysRequest, Storage>> getItemsWithStrongConsistency) {
+    }
+
+    private static final List<ShardRpcs> SHARD_RPCS = List.of(
+            new ShardRpcs(stub -> stub::writeShard0, stub -> stub::getShard0Items, stub -> stub::getShard0ItemsWithStrongConsistency),
+            new ShardRpcs(stub -> stub::writeShard1, stub -> stub::getShard1Items, stub -> stub::getShard1ItemsWithStrongConsistency),
+            new ShardRpcs(stub -> stub::writeShard2, stub -> stub::getShard2Items, stub -> stub::getShard2ItemsWithStrongConsistency),
+            new ShardRpcs(stub -> stub::writeShard3, stub -> stub::getShard3Items, stub -> stub::getShard3ItemsWithStrongConsistency));
+
+    static {
+        if (SHARD_RPCS.size() != NUM_ATTRIBUTE_SHARDS) {
+            throw new IllegalStateException("each attribute shard needs its RPCs");
+        }
+    }
+
+    /**
+     * @param rpcStub        the RPC stub of the storage workflow
+     * @param attributeShard the attribute shard, from 0 to NUM_ATTRIBUTE_SHARDS - 1
+     * @return the RPC that writes to the attribute shard, which only locks its data attribute
+     */
+    public static RpcDefinitions.RpcProc1<StorageWriteBatch> getWriteShardRpc(final StorageWorkflow rpcStub, final int attributeShard) {
+        return SHARD_RPCS.get(attributeShard).write().apply(rpcStub);
+    }
+
+    /**
+     * @param rpcStub           the RPC stub of the storage workflow
+     * @param attributeShard    the attribute shard, from 0 to NUM_ATTRIBUTE_SHARDS - 1
+     * @param strongConsistency true to bypass the caching of iWF server, so that the items reflect all the completed writes
+     * @return the RPC that gets items from the attribute shard, which only loads its data attribute
+     */
+    public static RpcDefinitions.RpcFunc1<StorageKeysRequest, Storage> getShardItemsRpc(
+            final StorageWorkflow rpcStub, final int attributeShard, final boolean strongConsistency) {
+        final ShardRpcs shardRpcs = SHARD_RPCS.get(attributeShard);
+        return (strongConsistency ? shardRpcs.getItemsWithStrongConsistency() : shardRpcs.getItems()).apply(rpcStub);
+    }
+
+    /**
+     * Retrieves items from an attribute shard. Read-only, so no locking.
+     * @return the items that exist, wrapped in a Storage
+     */
+    private static Storage getShardItems(final String shardKey, final StorageKeysRequest request, final Persistence persistence) {
+        final Storage storage = persistence.getDataAttribute(shardKey, Storage.class);
+        final Storage items = new Storage();
+        if (storage != null) {
+            request.keys().forEach(key -> {
+                final String value = storage.getItem(key);
+                if (value != null) {
+                    items.addItem(key, value);
+                }
+            });
+        }
+        return items;
+    }
+
+    /**
+     * Applies the writes(add, or remove for a null value), and sets the data attribute of the attribute shard once if
+     * anything changed.
+     */
+    private static void writeShard(final String shardKey, final StorageWriteBatch batch, final Persistence persistence) {
+        Storage storage = persistence.getDataAttribute(shardKey, Storage.class);
+        if (storage == null) {
+            storage = new Storage();
+        }
+        boolean changed = false;
+        for (final StorageWriteRequest write : batch.writes()) {
+            if (write.value() == null) {
+                changed |= storage.storageData().remove(write.key()) != null;
+            } else {
+                changed |= !write.value().equals(storage.storageData().put(write.key(), write.value()));
+            }
+        }
+        if (changed) {
+            persistence.setDataAttribute(shardKey, storage);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import java.util.List;
+
+/**
+ * Writes to an attribute shard of the sharded storage, applied under one lock.
+ * @param writes the writes, applied in order
+ */
+public record StorageWriteBatch(List<StorageWriteRequest> writes) {
+    public StorageWriteBatch {
+        if (writes == null) {
+            throw new IllegalArgumentException("writes is null");
+        }
+    }
+}
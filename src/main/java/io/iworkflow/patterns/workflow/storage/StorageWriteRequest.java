@@ -0,0 +1,14 @@
+package io.iworkflow.patterns.workflow.storage;
+
+/**
+ * Writes an item to a shard of the sharded storage.
+ * @param key the key of the item
+ * @param value the value of the item, or null to remove the item
+ */
+public record StorageWriteRequest(String key, String value) {
+    public StorageWriteRequest {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+    }
+}
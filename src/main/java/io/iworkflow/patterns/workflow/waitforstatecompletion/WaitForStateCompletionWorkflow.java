@@ -17,20 +17,21 @@ import java.util.List;
 public class WaitForStateCompletionWorkflow implements ObjectWorkflow {
 
     public static final String JOB_SEEKER_DATA = "job_seeker_data";
-    public static final ObjectMapper MAPPER = new ObjectMapper();
 
     public ServiceDependency mongoCollection;
     public ServiceDependency externalService;
+    private final ObjectMapper objectMapper;
 
-    public WaitForStateCompletionWorkflow(final ServiceDependency mongoCollection, final ServiceDependency externalService) {
+    public WaitForStateCompletionWorkflow(final ServiceDependency mongoCollection, final ServiceDependency externalService, final ObjectMapper objectMapper) {
         this.mongoCollection = mongoCollection;
         this.externalService = externalService;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     public List<StateDef> getWorkflowStates() {
         return Arrays.asList(StateDef.startingState(new PersistDataState(mongoCollection)),
-                StateDef.nonStartingState(new UpdateExternalSystemState(externalService, MAPPER)));
+                StateDef.nonStartingState(new UpdateExternalSystemState(externalService, objectMapper)));
     }
 
     @Override
@@ -0,0 +1,186 @@
+package io.iworkflow.worker;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the worker callbacks (waitUntil/execute/RPC) that iWF server sends to {@code /worker}.
+ *
+ * <p>In {@link Mode#SERVLET} mode the callback runs inline on the servlet container thread, which is the default
+ * Spring MVC behavior. In the other modes the callback is handed off to a separate executor so that a state blocking
+ * for seconds (e.g. Thread.sleep, or a blocking iwfClient call) doesn't hold on to one of the bounded Tomcat threads.
+ * The number of in-flight callbacks is capped per workflow type in all the modes, so that one busy workflow type cannot
+ * starve the others.
+ *
+ * <p>In SERVLET and PLATFORM mode, the permit is acquired on the calling thread before the callback is run or handed off,
+ * so that the platform threads are bounded by the caps, and a callback over the cap waits on the servlet container
+ * thread. In VIRTUAL mode, the permit is acquired on the virtual thread of the callback, which is cheap to park.
+ */
+public class WorkerCallbackExecutor {
+
+    public enum Mode {
+        /**
+         * Run on the servlet container thread (Tomcat's bounded platform-thread pool)
+         */
+        SERVLET,
+        /**
+         * Run on a pool of platform threads, bounded by the caps of the in-flight callbacks
+         */
+        PLATFORM,
+        /**
+         * Run each callback on its own virtual thread. Requires a JVM with virtual threads (Java 21+)
+         */
+        VIRTUAL;
+
+        public static Mode fromString(final String mode) {
+            return Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final int maxConcurrencyPerWorkflowType;
+    private final Duration acquireTimeout;
+    private final ConcurrentMap<String, Semaphore> permitsByWorkflowType = new ConcurrentHashMap<>();
+
+    public WorkerCallbackExecutor(final Mode mode, final int maxConcurrencyPerWorkflowType, final Duration acquireTimeout) {
+        if (maxConcurrencyPerWorkflowType <= 0) {
+            throw new IllegalArgumentException("maxConcurrencyPerWorkflowType must be positive");
+        }
+        this.mode = mode;
+        this.maxConcurrencyPerWorkflowType = maxConcurrencyPerWorkflowType;
+        this.acquireTimeout = acquireTimeout;
+        this.executor = switch (mode) {
+            case SERVLET -> null;
+            case PLATFORM -> Executors.newCachedThreadPool();
+            case VIRTUAL -> newVirtualThreadPerTaskExecutor();
+        };
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Runs the callback according to the mode.
+     *
+     * @param workflowType the workflow type of the callback, used for the concurrency cap
+     * @param callback     the callback to run
+     * @return a future of the callback result. It's already completed in SERVLET mode, or when the cap is reached in
+     * SERVLET and PLATFORM mode.
+     */
+    public <T> CompletableFuture<T> submit(final String workflowType, final Supplier<T> callback) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (mode == Mode.VIRTUAL) {
+            executor.execute(() -> {
+                try {
+                    final Semaphore permits = acquirePermit(workflowType);
+                    runAndRelease(permits, callback, future);
+                } catch (final Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+
+        final Semaphore permits;
+        try {
+            permits = acquirePermit(workflowType);
+        } catch (final InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (executor == null) {
+            runAndRelease(permits, callback, future);
+            return future;
+        }
+        try {
+            executor.execute(() -> runAndRelease(permits, callback, future));
+        } catch (final Throwable e) {
+            permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @param workflowType the workflow type
+     * @return the number of callbacks of the workflow type currently running
+     */
+    public int getInFlight(final String workflowType) {
+        final Semaphore permits = permitsByWorkflowType.get(workflowType);
+        return permits == null ? 0 : maxConcurrencyPerWorkflowType - permits.availablePermits();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of threads in the pool of PLATFORM mode, 0 in the other modes
+     */
+    int getPoolSize() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getPoolSize() : 0;
+    }
+
+    private Semaphore acquirePermit(final String workflowType) throws InterruptedException {
+        final Semaphore permits = permitsByWorkflowType.computeIfAbsent(
+                workflowType, k -> new Semaphore(maxConcurrencyPerWorkflowType));
+        if (!permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            // iWF server will retry the callback based on the state/RPC retry policy
+            throw new RejectedExecutionException(String.format(
+                    "workflow type %s has reached the max concurrency %d of worker callbacks", workflowType, maxConcurrencyPerWorkflowType));
+        }
+        return permits;
+    }
+
+    private static <T> void runAndRelease(final Semaphore permits, final Supplier<T> callback, final CompletableFuture<T> future) {
+        final T result;
+        try {
+            result = callback.get();
+        } catch (final Throwable e) {
+            permits.release();
+            future.completeExceptionally(e);
+            return;
+        }
+        // released before completing, so that the callback is no longer in flight when the caller sees the result
+        permits.release();
+        future.complete(result);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        // Looked up reflectively so that this project still compiles with Java 17
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual mode of worker callbacks requires a JVM with virtual threads (Java 21+)", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.iworkflow.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.iworkflow.gen.models.WorkerErrorResponse;
+import io.iworkflow.gen.models.WorkflowStateExecuteRequest;
+import io.iworkflow.gen.models.WorkflowStateExecuteResponse;
+import io.iworkflow.gen.models.WorkflowStateWaitUntilRequest;
+import io.iworkflow.gen.models.WorkflowStateWaitUntilResponse;
+import io.iworkflow.gen.models.WorkflowWorkerRpcRequest;
+import io.iworkflow.gen.models.WorkflowWorkerRpcResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Set;
+
+/**
+ * Times the decoding of the requests and the encoding of the responses of the {@code /worker} APIs, as the
+ * {@code iwf.worker.codec} metric of {@link WorkerMetrics#recordCodec}. Otherwise, it's the Jackson converter of Spring
+ * with the shared ObjectMapper, restricted to the models of these APIs.
+ *
+ * <p>Note that the encoded data attributes, search attributes and command results stay as {@code EncodedObject} after
+ * parsing, so their decoding by the {@code ObjectEncoder} is not included: the SDK only decodes them when a state or RPC
+ * reads them.
+ */
+public class WorkerCodecMetricsConverter extends MappingJackson2HttpMessageConverter {
+
+    private static final Set<Class<?>> WORKER_API_MODELS = Set.of(
+            WorkflowStateWaitUntilRequest.class,
+            WorkflowStateWaitUntilResponse.class,
+            WorkflowStateExecuteRequest.class,
+            WorkflowStateExecuteResponse.class,
+            WorkflowWorkerRpcRequest.class,
+            WorkflowWorkerRpcResponse.class,
+            WorkerErrorResponse.class
+    );
+
+    private final WorkerMetrics metrics;
+
+    public WorkerCodecMetricsConverter(final ObjectMapper objectMapper, final WorkerMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean canRead(final Type type, final Class<?> contextClass, final MediaType mediaType) {
+        return WORKER_API_MODELS.contains(type) && super.canRead(type, contextClass, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(final Type type, final Class<?> clazz, final MediaType mediaType) {
+        return WORKER_API_MODELS.contains(clazz) && super.canWrite(type, clazz, mediaType);
+    }
+
+    @Override
+    public Object read(final Type type, final Class<?> contextClass, final HttpInputMessage inputMessage) throws IOException {
+        final long start = System.nanoTime();
+        final Object request = super.read(type, contextClass, inputMessage);
+        metrics.recordCodec("decode", request.getClass(), System.nanoTime() - start);
+        return request;
+    }
+
+    @Override
+    protected void writeInternal(final Object body, final Type type, final HttpOutputMessage outputMessage) throws IOException {
+        final long start = System.nanoTime();
+        super.writeInternal(body, type, outputMessage);
+        metrics.recordCodec("encode", body.getClass(), System.nanoTime() - start);
+    }
+}
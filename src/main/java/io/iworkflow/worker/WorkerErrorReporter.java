@@ -0,0 +1,135 @@
+package io.iworkflow.worker;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import io.iworkflow.gen.models.WorkerErrorResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns the exceptions thrown by worker callbacks into {@link WorkerErrorResponse}, which iWF server records in the
+ * Cadence/Temporal history for debugging.
+ *
+ * <p>States that depend on a flaky external system may fail on purpose many times before they succeed, so the error
+ * reporting must be cheap:
+ * <ul>
+ *     <li>the stack trace in the error response is truncated to a few frames, so every occurrence still has where
+ *     it failed, next to the fingerprint(type + top frames) and how many times it was seen within the dedup window</li>
+ *     <li>the full stack trace is logged the first time that a fingerprint is seen within the dedup window, and
+ *     later occurrences only with a rate limit</li>
+ *     <li>failures are counted by workflow type and state/RPC, as the {@code iwf.worker.failures} metric</li>
+ * </ul>
+ */
+public class WorkerErrorReporter {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerErrorReporter.class);
+
+    private final Set<String> nonRetryableTypes;
+    private final int maxStackTraceFrames;
+    private final Cache<Integer, AtomicLong> occurrencesByFingerprint;
+    private final RateLimiter logRateLimiter;
+    private final MeterRegistry meterRegistry;
+
+    public WorkerErrorReporter(
+            final MeterRegistry meterRegistry,
+            final Set<String> nonRetryableTypes,
+            final int maxStackTraceFrames,
+            final int maxFingerprints,
+            final Duration dedupWindow,
+            final double logPermitsPerSecond) {
+        this.meterRegistry = meterRegistry;
+        this.nonRetryableTypes = Set.copyOf(nonRetryableTypes);
+        this.maxStackTraceFrames = maxStackTraceFrames;
+        this.occurrencesByFingerprint = CacheBuilder.newBuilder()
+                .maximumSize(maxFingerprints)
+                .expireAfterWrite(dedupWindow)
+                .build();
+        this.logRateLimiter = RateLimiter.create(logPermitsPerSecond);
+    }
+
+    /**
+     * @param ex the exception thrown by a worker callback
+     * @return false if the exception type(or any of its super types) is configured as non-retryable
+     */
+    public boolean isRetryable(final Throwable ex) {
+        for (Class<?> type = ex.getClass(); type != null; type = type.getSuperclass()) {
+            if (nonRetryableTypes.contains(type.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the failure and builds the error response.
+     *
+     * @param workflowType the workflow type of the callback, null if unknown(e.g. the request cannot be parsed)
+     * @param stateOrRpc   the state id or RPC name of the callback, null if unknown
+     * @param ex           the exception thrown by the callback
+     * @return the error response to return to iWF server
+     */
+    public WorkerErrorResponse report(final String workflowType, final String stateOrRpc, final Throwable ex) {
+        final boolean retryable = isRetryable(ex);
+        meterRegistry.counter("iwf.worker.failures",
+                "workflowType", WorkerMetrics.orNone(workflowType),
+                "stateOrRpc", WorkerMetrics.orNone(stateOrRpc),
+                "retryable", String.valueOf(retryable)
+        ).increment();
+        final String failureKey = workflowType + "/" + stateOrRpc;
+
+        final StackTraceElement[] stackTrace = ex.getStackTrace();
+        final int fingerprint = fingerprint(ex, stackTrace);
+        // the counter decides the first occurrence, as concurrent failures may share the same new counter
+        final long seen = occurrencesByFingerprint.asMap()
+                .computeIfAbsent(fingerprint, k -> new AtomicLong())
+                .incrementAndGet();
+        final boolean firstOccurrence = seen == 1;
+
+        final String fingerprintHex = Integer.toHexString(fingerprint);
+        if (firstOccurrence || logRateLimiter.tryAcquire()) {
+            logger.warn("worker callback {} failed, fingerprint {} seen {} times", failureKey, fingerprintHex, seen, ex);
+        }
+
+        final StringBuilder detail = new StringBuilder()
+                .append(ex.getMessage())
+                .append("; retryable: ").append(retryable)
+                .append("; fingerprint: ").append(fingerprintHex)
+                .append("; seen: ").append(seen)
+                .append("; stack trace:");
+        appendStackTrace(detail, ex, stackTrace);
+
+        return new WorkerErrorResponse()
+                .detail(detail.toString())
+                .errorType(ex.getClass().getName());
+    }
+
+    private int fingerprint(final Throwable ex, final StackTraceElement[] stackTrace) {
+        int hash = ex.getClass().getName().hashCode();
+        for (int i = 0; i < Math.min(stackTrace.length, maxStackTraceFrames); i++) {
+            hash = 31 * hash + stackTrace[i].hashCode();
+        }
+        if (ex.getCause() != null) {
+            hash = 31 * hash + ex.getCause().getClass().getName().hashCode();
+        }
+        return hash;
+    }
+
+    private void appendStackTrace(final StringBuilder builder, final Throwable ex, final StackTraceElement[] stackTrace) {
+        builder.append(ex);
+        final int frames = Math.min(stackTrace.length, maxStackTraceFrames);
+        for (int i = 0; i < frames; i++) {
+            builder.append("\n\tat ").append(stackTrace[i]);
+        }
+        if (stackTrace.length > frames) {
+            builder.append("\n\t... ").append(stackTrace.length - frames).append(" more");
+        }
+        if (ex.getCause() != null) {
+            builder.append("\nCaused by: ").append(ex.getCause());
+        }
+    }
+}
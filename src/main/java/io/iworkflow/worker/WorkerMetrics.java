@@ -0,0 +1,112 @@
+package io.iworkflow.worker;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the worker callbacks, exported via the Spring Boot Actuator {@code /actuator/metrics} endpoint:
+ * <ul>
+ *     <li>{@code iwf.worker.callback}: latency of waitUntil/execute/RPC, tagged by api, workflowType, stateId, rpcName and outcome</li>
+ *     <li>{@code iwf.worker.callback.payload}: size in bytes of the callback request, mostly the encoded data attributes</li>
+ *     <li>{@code iwf.worker.state.execute.retries}: number of execute attempts that are retries</li>
+ *     <li>{@code iwf.worker.codec}: time to decode the callback request / encode the callback response</li>
+ * </ul>
+ */
+public class WorkerMetrics {
+    public static final String API_WAIT_UNTIL = "waitUntil";
+    public static final String API_EXECUTE = "execute";
+    public static final String API_RPC = "rpc";
+
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+
+    public WorkerMetrics(final MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Runs the state API callback and records its metrics
+     *
+     * @param api          {@link #API_WAIT_UNTIL} or {@link #API_EXECUTE}
+     * @param workflowType the workflow type
+     * @param stateId      the state id
+     * @param payloadBytes size of the request in bytes, negative if unknown
+     * @param callback     the callback
+     * @return the result of the callback
+     */
+    public <T> T recordState(final String api, final String workflowType, final String stateId, final long payloadBytes, final Supplier<T> callback) {
+        return record(Tags.of("api", api, "workflowType", orNone(workflowType), "stateId", orNone(stateId), "rpcName", NONE), payloadBytes, callback);
+    }
+
+    /**
+     * Runs the RPC callback and records its metrics
+     *
+     * @param workflowType the workflow type
+     * @param rpcName      the RPC name
+     * @param payloadBytes size of the request in bytes, negative if unknown
+     * @param callback     the callback
+     * @return the result of the callback
+     */
+    public <T> T recordRpc(final String workflowType, final String rpcName, final long payloadBytes, final Supplier<T> callback) {
+        return record(Tags.of("api", API_RPC, "workflowType", orNone(workflowType), "stateId", NONE, "rpcName", orNone(rpcName)), payloadBytes, callback);
+    }
+
+    /**
+     * @param workflowType the workflow type
+     * @param stateId      the state id
+     * @param attempt      the attempt of the execute API, starting from 1
+     */
+    public void recordExecuteAttempt(final String workflowType, final String stateId, final Integer attempt) {
+        if (attempt != null && attempt > 1) {
+            registry.counter("iwf.worker.state.execute.retries", "workflowType", orNone(workflowType), "stateId", orNone(stateId)).increment();
+        }
+    }
+
+    /**
+     * @param operation "decode" or "encode"
+     * @param type      the type of the request/response
+     * @param nanos     time spent
+     */
+    public void recordCodec(final String operation, final Class<?> type, final long nanos) {
+        registry.timer("iwf.worker.codec", "operation", operation, "type", type.getSimpleName())
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Tag values cannot be null
+     */
+    static String orNone(final String tagValue) {
+        return tagValue == null ? NONE : tagValue;
+    }
+
+    private <T> T record(final Tags tags, final long payloadBytes, final Supplier<T> callback) {
+        if (payloadBytes >= 0) {
+            DistributionSummary.builder("iwf.worker.callback.payload")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(payloadBytes);
+        }
+
+        final Timer.Sample sample = Timer.start(registry);
+        String outcome = "failure";
+        try {
+            final T result = callback.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("iwf.worker.callback")
+                    .tags(tags)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.iworkflow.encoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.iworkflow.core.JacksonJsonObjectEncoder;
+import io.iworkflow.core.ObjectEncoder;
+import io.iworkflow.gen.models.EncodedObject;
+import io.iworkflow.patterns.workflow.storage.Storage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class SmileObjectEncoderTest {
+    private static final int COMPRESSION_THRESHOLD_BYTES = 1024;
+
+    private ObjectMapper objectMapper;
+    private ObjectEncoder jsonEncoder;
+    private SmileObjectEncoder smileEncoder;
+
+    @BeforeEach
+    void beforeEach() {
+        objectMapper = new ObjectMapper();
+        jsonEncoder = new JacksonJsonObjectEncoder();
+        smileEncoder = new SmileObjectEncoder(objectMapper, jsonEncoder, COMPRESSION_THRESHOLD_BYTES);
+    }
+
+    @Test
+    public void testSmallValueIsPlainJson() {
+        final Storage storage = newStorage(2);
+
+        final EncodedObject encoded = smileEncoder.encode(storage);
+
+        assertEquals(jsonEncoder.getEncodingType(), encoded.getEncoding());
+        assertEquals(jsonEncoder.encode(storage).getData(), encoded.getData());
+        assertEquals(storage, smileEncoder.decode(encoded, Storage.class));
+    }
+
+    @Test
+    public void testLargeValueIsDeflatedSmile() {
+        final Storage storage = newStorage(1000);
+
+        final EncodedObject encoded = smileEncoder.encode(storage);
+
+        assertEquals(SmileObjectEncoder.ENCODING_TYPE_DEFLATED, encoded.getEncoding());
+        assertTrue(encoded.getData().length() < jsonEncoder.encode(storage).getData().length());
+        assertEquals(storage, smileEncoder.decode(encoded, Storage.class));
+    }
+
+    @Test
+    public void testLargeValueIsSerializedOnce() {
+        final ObjectEncoder fallbackEncoder = spy(jsonEncoder);
+        final SmileObjectEncoder encoder = new SmileObjectEncoder(objectMapper, fallbackEncoder, COMPRESSION_THRESHOLD_BYTES);
+
+        encoder.encode(newStorage(1000));
+
+        // the size is checked on the Smile, so a large value is not serialized as JSON too
+        verify(fallbackEncoder, never()).encode(any());
+    }
+
+    @Test
+    public void testSmileValueIsDecoded() throws Exception {
+        // written by the earlier version of the encoder, which wrote the small values as Smile
+        final Storage storage = newStorage(2);
+        final byte[] smile = objectMapper.copyWith(new SmileFactory()).writeValueAsBytes(storage);
+        final EncodedObject encoded = new EncodedObject()
+                .encoding(SmileObjectEncoder.ENCODING_TYPE)
+                .data(Base64.getEncoder().encodeToString(smile));
+
+        assertEquals(storage, smileEncoder.decode(encoded, Storage.class));
+    }
+
+    @Test
+    public void testLegacyJsonValueIsDecoded() {
+        // written before switching to this encoder, including the large values
+        for (final Storage storage : new Storage[]{newStorage(2), newStorage(1000)}) {
+            final EncodedObject encoded = jsonEncoder.encode(storage);
+
+            assertEquals(storage, smileEncoder.decode(encoded, Storage.class));
+        }
+    }
+
+    @Test
+    public void testNullIsEncodedByFallback() {
+        final EncodedObject encoded = smileEncoder.encode(null);
+
+        assertEquals(jsonEncoder.encode(null), encoded);
+        assertNull(smileEncoder.decode(encoded, Storage.class));
+    }
+
+    private static Storage newStorage(final int numItems) {
+        final Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < numItems; i++) {
+            data.put("key-" + i, "value-" + i);
+        }
+        return new Storage(data);
+    }
+}
@@ -0,0 +1,100 @@
+package io.iworkflow.patterns.workflow.drainchannels.internal;
+
+import io.iworkflow.core.Context;
+import io.iworkflow.core.StateDecision;
+import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.communication.Communication;
+import io.iworkflow.core.communication.InternalChannelCommandResult;
+import io.iworkflow.core.persistence.Persistence;
+import io.iworkflow.gen.models.ChannelRequestStatus;
+import io.iworkflow.patterns.services.ServiceDependency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DrainInternalChannelsWorkflowTest {
+    @Mock
+    private ServiceDependency mongoCollection;
+
+    @Mock
+    private Context context;
+    @Mock
+    private Persistence persistence;
+    @Mock
+    private Communication communication;
+    @Mock
+    private CommandResults commandResults;
+
+    private UpsertMongoRecordState upsertMongoRecordState;
+
+    @BeforeEach
+    void beforeEach() {
+        upsertMongoRecordState = new UpsertMongoRecordState(mongoCollection);
+    }
+
+    @Test
+    public void testUpsertMongoRecordStateCoalescesByIdAndCompletes() throws Exception {
+        final MongoDocument first = document("documentId-1", "RECEIVED", false);
+        final MongoDocument other = document("documentId-2", "RECEIVED", false);
+        final MongoDocument firstUpdated = document("documentId-1", "PROCESSED", false);
+        final MongoDocument otherUpdated = document("documentId-2", "PROCESSED", false);
+        final MongoDocument finalized = document("documentId-1", "FINALIZED", true);
+        final List<InternalChannelCommandResult> results = new ArrayList<>();
+        for (final MongoDocument document : List.of(first, other, firstUpdated, otherUpdated, finalized)) {
+            results.add(received(document));
+        }
+        // the commands of the batch that were not received
+        results.add(waiting());
+        when(commandResults.getAllInternalChannelCommandResult()).thenReturn(results);
+
+        final StateDecision decision = upsertMongoRecordState.execute(context, null, commandResults, persistence, communication);
+
+        // one bulk upsert with the last status of each id, in the order of their last updates
+        verify(mongoCollection).bulkUpsert(List.of(otherUpdated, finalized));
+        assertEquals(StateDecision.gracefulCompleteWorkflow(), decision);
+    }
+
+    @Test
+    public void testUpsertMongoRecordStateLoopsWithoutFinalCommand() throws Exception {
+        final MongoDocument document = document("documentId-1", "PROCESSED", false);
+        when(commandResults.getAllInternalChannelCommandResult()).thenReturn(List.of(received(document), waiting()));
+
+        final StateDecision decision = upsertMongoRecordState.execute(context, null, commandResults, persistence, communication);
+
+        verify(mongoCollection).bulkUpsert(List.of(document));
+        assertEquals(StateDecision.singleNextState(UpsertMongoRecordState.class), decision);
+    }
+
+    private static MongoDocument document(final String id, final String status, final boolean finalCommand) {
+        return ImmutableMongoDocument.builder()
+                .id(id)
+                .status(status)
+                .isFinalCommand(finalCommand)
+                .build();
+    }
+
+    private static InternalChannelCommandResult received(final MongoDocument document) {
+        final InternalChannelCommandResult result = mock(InternalChannelCommandResult.class);
+        when(result.getRequestStatusEnum()).thenReturn(ChannelRequestStatus.RECEIVED);
+        when(result.getValue()).thenReturn(Optional.<Object>of(document));
+        return result;
+    }
+
+    private static InternalChannelCommandResult waiting() {
+        final InternalChannelCommandResult result = mock(InternalChannelCommandResult.class);
+        when(result.getRequestStatusEnum()).thenReturn(ChannelRequestStatus.WAITING);
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package io.iworkflow.patterns.workflow.parentchild;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.Context;
+import io.iworkflow.core.StateMovement;
+import io.iworkflow.core.communication.Communication;
+import io.iworkflow.core.persistence.Persistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.CONCURRENCY_PER_PARENT_WORKFLOW;
+import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.DA_PARALLELISM;
+import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.MAX_PARALLELISM;
+import static io.iworkflow.patterns.workflow.parentchild.ParentWorkflowV2.RETIRE_THREAD;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParentWorkflowV2Test {
+    @Mock
+    private Client iwfClient;
+
+    @Mock
+    private Context context;
+    @Mock
+    private Persistence persistence;
+    @Mock
+    private Communication communication;
+
+    private ParentWorkflowV2 parentWorkflow;
+
+    @BeforeEach
+    void beforeEach() {
+        parentWorkflow = new ParentWorkflowV2(iwfClient);
+    }
+
+    @Test
+    public void testScaleUpStartsThreads() {
+        when(persistence.getDataAttribute(DA_PARALLELISM, Integer.class)).thenReturn(5);
+
+        final Parallelism parallelism = parentWorkflow.setParallelism(context, 8, persistence, communication);
+
+        assertEquals(new Parallelism(8, 0), parallelism);
+        verify(communication, times(3)).triggerStateMovements(StateMovement.create(LoopForNextTaskState.class));
+        verify(communication, never()).publishInternalChannel(anyString(), any());
+        verify(persistence).setDataAttribute(DA_PARALLELISM, 8);
+    }
+
+    @Test
+    public void testScaleDownRetiresThreads() {
+        when(persistence.getDataAttribute(DA_PARALLELISM, Integer.class)).thenReturn(5);
+
+        final Parallelism parallelism = parentWorkflow.setParallelism(context, 1, persistence, communication);
+
+        // the returned retiring threads are the ones asked to stop by this call
+        assertEquals(new Parallelism(1, 4), parallelism);
+        verify(communication, times(4)).publishInternalChannel(RETIRE_THREAD, null);
+        verify(communication, never()).triggerStateMovements(any(StateMovement.class));
+        verify(persistence).setDataAttribute(DA_PARALLELISM, 1);
+    }
+
+    @Test
+    public void testSetBeforeInitStateCountsItsThreads() {
+        // InitState hasn't run yet, and will start CONCURRENCY_PER_PARENT_WORKFLOW threads
+        when(persistence.getDataAttribute(DA_PARALLELISM, Integer.class)).thenReturn(null);
+
+        final Parallelism parallelism = parentWorkflow.setParallelism(context, CONCURRENCY_PER_PARENT_WORKFLOW + 2, persistence, communication);
+
+        assertEquals(new Parallelism(CONCURRENCY_PER_PARENT_WORKFLOW + 2, 0), parallelism);
+        verify(communication, times(2)).triggerStateMovements(StateMovement.create(LoopForNextTaskState.class));
+        verify(persistence).setDataAttribute(DA_PARALLELISM, CONCURRENCY_PER_PARENT_WORKFLOW + 2);
+    }
+
+    @Test
+    public void testInvalidParallelismIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> parentWorkflow.setParallelism(context, MAX_PARALLELISM + 1, persistence, communication));
+        assertThrows(IllegalArgumentException.class,
+                () -> parentWorkflow.setParallelism(context, -1, persistence, communication));
+
+        verify(persistence, never()).setDataAttribute(anyString(), any());
+    }
+}
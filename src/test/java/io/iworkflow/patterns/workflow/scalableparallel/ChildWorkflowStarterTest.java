@@ -0,0 +1,86 @@
+package io.iworkflow.patterns.workflow.scalableparallel;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.WorkflowOptions;
+import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChildWorkflowStarterTest {
+
+    private static final int MAX_PARALLELISM = 4;
+
+    private Client iwfClient;
+    private ChildWorkflowStarter starter;
+
+    @BeforeEach
+    public void setup() {
+        iwfClient = mock(Client.class);
+        starter = new ChildWorkflowStarter(iwfClient, MAX_PARALLELISM);
+    }
+
+    @Test
+    public void testStartsConcurrentlyWithBoundedParallelism() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        when(iwfClient.startWorkflow(eq(ChildWorkflow.class), anyString(), anyInt(), any(), any(WorkflowOptions.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return "runId";
+        });
+
+        final List<String> started = starter.startChildren(inputs(20), "parent", "requestId");
+
+        assertEquals(20, started.size());
+        assertTrue(maxInFlight.get() > 1, "started one by one");
+        assertTrue(maxInFlight.get() <= MAX_PARALLELISM, "started more than the max parallelism at the same time");
+    }
+
+    @Test
+    public void testStartedByOtherParentIsNotWaited() {
+        when(iwfClient.startWorkflow(eq(ChildWorkflow.class), anyString(), anyInt(), any(), any(WorkflowOptions.class))).thenReturn("runId");
+        when(iwfClient.startWorkflow(eq(ChildWorkflow.class), eq("processing-request-1"), anyInt(), any(), any(WorkflowOptions.class)))
+                .thenThrow(WorkflowAlreadyStartedException.class);
+
+        final List<String> started = starter.startChildren(inputs(3), "parent", "requestId");
+
+        assertEquals(List.of("processing-request-0", "processing-request-2"), started);
+    }
+
+    @Test
+    public void testFailureIsThrownAfterAllStarts() {
+        when(iwfClient.startWorkflow(eq(ChildWorkflow.class), anyString(), anyInt(), any(), any(WorkflowOptions.class))).thenReturn("runId");
+        when(iwfClient.startWorkflow(eq(ChildWorkflow.class), eq("processing-request-0"), anyInt(), any(), any(WorkflowOptions.class)))
+                .thenThrow(new IllegalStateException("server unavailable"));
+
+        assertThrows(IllegalStateException.class, () -> starter.startChildren(inputs(10), "parent", "requestId"));
+
+        verify(iwfClient, times(10)).startWorkflow(eq(ChildWorkflow.class), anyString(), anyInt(), any(), any(WorkflowOptions.class));
+    }
+
+    private static Map<String, String> inputs(final int numChildren) {
+        final Map<String, String> inputs = new LinkedHashMap<>();
+        for (int i = 0; i < numChildren; i++) {
+            inputs.put("processing-request-" + i, "request-" + i);
+        }
+        return inputs;
+    }
+}
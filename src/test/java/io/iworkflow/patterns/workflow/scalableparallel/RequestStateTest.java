@@ -0,0 +1,156 @@
+package io.iworkflow.patterns.workflow.scalableparallel;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.Context;
+import io.iworkflow.core.RpcDefinitions;
+import io.iworkflow.core.StateDecision;
+import io.iworkflow.core.command.CommandResults;
+import io.iworkflow.core.communication.Communication;
+import io.iworkflow.core.persistence.Persistence;
+import io.iworkflow.patterns.workflow.scalableparallel.models.BatchEnqueueRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.DelayedRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.EnqueueResult;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ParentLoad;
+import io.iworkflow.patterns.workflow.scalableparallel.models.ScalableParallelRequest;
+import io.iworkflow.patterns.workflow.scalableparallel.models.TaskRange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow.DA_CURSOR;
+import static io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow.DA_NUM_TASKS;
+import static io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow.MAX_TASKS_PER_BATCH;
+import static io.iworkflow.patterns.workflow.scalableparallel.RequestReceiverWorkflow.MAX_TASK_RANGES_PER_ENQUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestStateTest {
+    private static final String REQUEST_ID = "request-1";
+    private static final String REQUEST_RUN_ID = "run-1";
+    // the tasks that a parent takes in one enqueue, when it's empty
+    private static final int TASKS_PER_ENQUEUE = MAX_TASK_RANGES_PER_ENQUEUE * MAX_TASKS_PER_BATCH;
+
+    private Client iwfClient;
+    private Context context;
+    private Persistence persistence;
+    private Communication communication;
+    private CommandResults commandResults;
+    private Map<String, ParentWorkflow> parentStubs;
+    // the task ranges enqueued to the parents, in order
+    private List<TaskRange> enqueuedRanges;
+    private RequestState requestState;
+
+    @BeforeEach
+    void beforeEach() {
+        iwfClient = mock(Client.class);
+        context = mock(Context.class);
+        persistence = mock(Persistence.class);
+        communication = mock(Communication.class);
+        commandResults = mock(CommandResults.class);
+        when(context.getWorkflowId()).thenReturn(REQUEST_ID);
+        when(context.getWorkflowRunId()).thenReturn(REQUEST_RUN_ID);
+
+        parentStubs = new HashMap<>();
+        enqueuedRanges = new ArrayList<>();
+        when(iwfClient.newRpcStub(eq(ParentWorkflow.class), anyString())).thenAnswer(invocation ->
+                parentStubs.computeIfAbsent(invocation.getArgument(1), parentWorkflowId -> newParentStub()));
+        // invoke the stubbed RPC methods, so that each parent can be stubbed on its own
+        when(iwfClient.invokeRPC(any(RpcDefinitions.RpcFunc0.class))).thenAnswer(invocation -> {
+            final RpcDefinitions.RpcFunc0<Object> rpcStubMethod = invocation.getArgument(0);
+            return rpcStubMethod.execute(null, null, null);
+        });
+        when(iwfClient.invokeRPC(any(RpcDefinitions.RpcFunc1.class), any())).thenAnswer(invocation -> {
+            final RpcDefinitions.RpcFunc1<Object, Object> rpcStubMethod = invocation.getArgument(0);
+            return rpcStubMethod.execute(null, invocation.getArgument(1), null, null);
+        });
+
+        requestState = new RequestState(iwfClient);
+    }
+
+    private ParentWorkflow newParentStub() {
+        final ParentWorkflow stub = mock(ParentWorkflow.class);
+        when(stub.getLoad(any(), any(), any())).thenReturn(ParentLoad.EMPTY);
+        // accepts all the task ranges
+        when(stub.enqueue(any(), any(), any(), any())).thenAnswer(invocation -> {
+            final BatchEnqueueRequest request = invocation.getArgument(1);
+            enqueuedRanges.addAll(request.ranges());
+            return new EnqueueResult(request.ranges().stream().mapToInt(TaskRange::size).sum(), 0, 0, 0);
+        });
+        return stub;
+    }
+
+    @Test
+    public void testCursorLoopsUntilAllTasksAreSent() {
+        final int numTasks = 2 * TASKS_PER_ENQUEUE + 1500;
+        final ScalableParallelRequest input = new ScalableParallelRequest(numTasks, 2, null, 0, null);
+
+        // the first execution fills both parents from the start
+        StateDecision decision = requestState.execute(context, input, commandResults, persistence, communication);
+
+        assertEquals(StateDecision.singleNextState(RequestState.class, input), decision);
+        verify(persistence).setDataAttribute(DA_NUM_TASKS, numTasks);
+        verify(persistence).setDataAttribute(DA_CURSOR, 2 * TASKS_PER_ENQUEUE);
+
+        // the next execution resumes from the persisted cursor, and sends the rest of the tasks
+        when(persistence.getDataAttribute(DA_CURSOR, Integer.class)).thenReturn(2 * TASKS_PER_ENQUEUE);
+        decision = requestState.execute(context, input, commandResults, persistence, communication);
+
+        assertEquals(StateDecision.singleNextState(WaitForTasksState.class), decision);
+        verify(persistence).setDataAttribute(DA_CURSOR, numTasks);
+        assertContiguous(numTasks);
+    }
+
+    @Test
+    public void testFailedParentIsSkipped() {
+        final ScalableParallelRequest input = new ScalableParallelRequest(10 * TASKS_PER_ENQUEUE, 2, null, 0, null);
+        final ParentWorkflow failingParent = newParentStub();
+        doThrow(new IllegalStateException("RPC timeout")).when(failingParent).enqueue(any(), any(), any(), any());
+        parentStubs.put(ParentWorkflow.PARENT_WORKFLOW_ID_PREFIX + 1, failingParent);
+
+        final StateDecision decision = requestState.execute(context, input, commandResults, persistence, communication);
+
+        // the tasks accepted by the other parent are checkpointed, instead of failing the execution
+        assertEquals(StateDecision.singleNextState(RequestState.class, input), decision);
+        verify(persistence).setDataAttribute(DA_CURSOR, TASKS_PER_ENQUEUE);
+        assertContiguous(TASKS_PER_ENQUEUE);
+    }
+
+    @Test
+    public void testAllParentsFailedWaitsAndKeepsCursor() {
+        final ScalableParallelRequest input = new ScalableParallelRequest(10 * TASKS_PER_ENQUEUE, 2, null, 0, null);
+        when(persistence.getDataAttribute(DA_CURSOR, Integer.class)).thenReturn(MAX_TASKS_PER_BATCH);
+        for (int i = 1; i <= 2; i++) {
+            final ParentWorkflow failingParent = newParentStub();
+            doThrow(new IllegalStateException("RPC timeout")).when(failingParent).getLoad(any(), any(), any());
+            doThrow(new IllegalStateException("RPC timeout")).when(failingParent).enqueue(any(), any(), any(), any());
+            parentStubs.put(ParentWorkflow.PARENT_WORKFLOW_ID_PREFIX + i, failingParent);
+        }
+
+        final StateDecision decision = requestState.execute(context, input, commandResults, persistence, communication);
+
+        assertEquals(StateDecision.singleNextState(WaitForCapacityState.class, new DelayedRequest(input, 1_000)), decision);
+        verify(persistence).setDataAttribute(DA_CURSOR, MAX_TASKS_PER_BATCH);
+    }
+
+    /**
+     * The task ranges were sent once each, from offset 0 up to the given offset
+     */
+    private void assertContiguous(final int endOffset) {
+        int offset = 0;
+        for (final TaskRange range : enqueuedRanges) {
+            assertEquals(offset, range.startOffset());
+            offset = range.endOffset();
+        }
+        assertEquals(endOffset, offset);
+    }
+}
@@ -0,0 +1,54 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ConcurrencyControlTest {
+    private static final ChildCompletion FAST = new ChildCompletion("child-1", true, 1000, 0);
+    private static final ChildCompletion SLOW = new ChildCompletion("child-2", true, 20000, 0);
+    private static final ChildCompletion FAILED = new ChildCompletion("child-3", false, 1000, 0);
+
+    @Test
+    public void testFixedIsNotAdjusted() {
+        final ConcurrencyControl control = ConcurrencyControl.fixed(3);
+
+        assertSame(control, control.onCompletions(List.of(FAILED, SLOW)));
+        assertEquals(3, control.currentLimit());
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        ConcurrencyControl control = new ConcurrencyControl(true, 10, 1, 100, 10000);
+
+        // about +1 for every "limit" completions
+        control = control.onCompletions(Collections.nCopies(10, FAST));
+
+        assertEquals(11, control.currentLimit());
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseOncePerBatch() {
+        final ConcurrencyControl control = new ConcurrencyControl(true, 40, 1, 100, 10000);
+
+        assertEquals(20, control.onCompletions(List.of(FAST, SLOW, FAILED)).currentLimit());
+        assertEquals(20, control.onCompletions(List.of(FAILED)).currentLimit());
+    }
+
+    @Test
+    public void testLimitStaysWithinBounds() {
+        ConcurrencyControl control = new ConcurrencyControl(true, 100, 5, 100, 10000);
+
+        control = control.onCompletions(Collections.nCopies(1000, FAST));
+        assertEquals(100, control.currentLimit());
+
+        for (int i = 0; i < 10; i++) {
+            control = control.onCompletions(List.of(FAILED));
+        }
+        assertEquals(5, control.currentLimit());
+    }
+}
@@ -0,0 +1,111 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InFlightChildSetTest {
+
+    @Test
+    public void testAddAndRemove() {
+        final InFlightChildSet set = InFlightChildSet.of(null);
+
+        assertTrue(set.add("processing-request1-10"));
+        assertTrue(set.add("processing-request1-11"));
+        assertTrue(set.add("processing-request2-0"));
+        assertFalse(set.add("processing-request1-10"));
+        assertEquals(3, set.size());
+
+        assertTrue(set.remove("processing-request1-10"));
+        // duplicated completion, or a child that was never started by this parent
+        assertFalse(set.remove("processing-request1-10"));
+        assertFalse(set.remove("processing-request1-9"));
+        assertFalse(set.remove("processing-request3-0"));
+
+        assertFalse(set.contains("processing-request1-10"));
+        assertTrue(set.contains("processing-request1-11"));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testAddBeforeBaseOffset() {
+        final InFlightChildSet set = InFlightChildSet.of(null);
+        set.add("processing-request1-100");
+        set.add("processing-request1-5");
+
+        assertTrue(set.contains("processing-request1-100"));
+        assertTrue(set.contains("processing-request1-5"));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final InFlightChildSet set = InFlightChildSet.of(null);
+        for (int i = 0; i < 5000; i++) {
+            set.add("processing-request1-" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            set.remove("processing-request1-" + i);
+        }
+        set.add("processing-request2-7");
+
+        final ObjectMapper mapper = new ObjectMapper();
+        final String json = mapper.writeValueAsString(set.toInFlightChildren());
+        final InFlightChildren decoded = mapper.readValue(json, InFlightChildren.class);
+        final InFlightChildSet decodedSet = InFlightChildSet.of(decoded);
+
+        assertEquals(4001, decoded.size());
+        assertEquals(4001, decodedSet.size());
+        // the completed children at the beginning are trimmed off
+        assertEquals(1000, decoded.windows().get("processing-request1").baseOffset());
+        assertFalse(decodedSet.contains("processing-request1-999"));
+        assertTrue(decodedSet.contains("processing-request1-1000"));
+        assertTrue(decodedSet.contains("processing-request1-4999"));
+        assertTrue(decodedSet.contains("processing-request2-7"));
+        // about a bit per child
+        assertTrue(json.length() < 1000, json);
+    }
+
+    @Test
+    public void testSparseRoundTrip() throws Exception {
+        final InFlightChildSet set = InFlightChildSet.of(null);
+        for (int i = 0; i < 1_000_000; i++) {
+            set.add("processing-request1-" + i);
+        }
+        // a slow child holds the beginning of the window while the later ones complete
+        for (int i = 1; i < 999_990; i++) {
+            set.remove("processing-request1-" + i);
+        }
+
+        final ObjectMapper mapper = new ObjectMapper();
+        final String json = mapper.writeValueAsString(set.toInFlightChildren());
+        final InFlightChildren decoded = mapper.readValue(json, InFlightChildren.class);
+        final InFlightChildSet decodedSet = InFlightChildSet.of(decoded);
+
+        assertEquals(11, decodedSet.size());
+        assertNull(decoded.windows().get("processing-request1").bits());
+        assertTrue(decodedSet.contains("processing-request1-0"));
+        assertFalse(decodedSet.contains("processing-request1-1"));
+        assertTrue(decodedSet.contains("processing-request1-999990"));
+        assertTrue(decodedSet.contains("processing-request1-999999"));
+        // instead of a bitmap of a million bits
+        assertTrue(json.length() < 200, json);
+
+        // back to a bitmap once the slow child completes
+        decodedSet.remove("processing-request1-0");
+        assertNull(decodedSet.toInFlightChildren().windows().get("processing-request1").offsets());
+    }
+
+    @Test
+    public void testInvalidChildWorkflowId() {
+        final InFlightChildSet set = InFlightChildSet.of(null);
+
+        assertThrows(IllegalArgumentException.class, () -> set.add("processing"));
+        assertThrows(IllegalArgumentException.class, () -> set.add("processing-request1"));
+    }
+}
@@ -0,0 +1,45 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ProgressCountersTest {
+
+    @Test
+    public void testTotal() {
+        final TaskProgress parent1 = TaskProgress.EMPTY
+                .plus(new ChildCompletion("processing-request-0", true, 1000, 5))
+                .plus(new ChildCompletion("processing-request-1", false, 1000, 7));
+        final ProgressCounters progressByParent = ProgressCounters.EMPTY
+                .withLatest("parent_workflow_1", parent1)
+                .withLatest("parent_workflow_2", new TaskProgress(3, 0, 10));
+
+        assertEquals(new TaskProgress(4, 1, 15), progressByParent.total());
+    }
+
+    @Test
+    public void testRestartedParent() {
+        final ProgressReport firstRun = new ProgressReport("request-run1", "parent_workflow_1", "run-1", new TaskProgress(10, 0, 100));
+        ProgressCounters progressByParent = ProgressCounters.EMPTY.withLatest(firstRun.parentRunKey(), firstRun.progress());
+
+        // A retried or late report of the same run is ignored
+        assertSame(progressByParent, progressByParent.withLatest(firstRun.parentRunKey(), new TaskProgress(8, 1, 80)));
+
+        // The parent completed and was started again with the same workflow id, counting from 0
+        final ProgressReport secondRun = new ProgressReport("request-run1", "parent_workflow_1", "run-2", new TaskProgress(3, 1, 30));
+        progressByParent = progressByParent.withLatest(secondRun.parentRunKey(), secondRun.progress());
+
+        assertEquals(new TaskProgress(13, 1, 130), progressByParent.total());
+    }
+
+    @Test
+    public void testRequestProgress() {
+        final RequestProgress progress = RequestProgress.of(100, 40, new TaskProgress(25, 5, 250));
+
+        assertEquals(new RequestProgress(100, 40, 10, 25, 5, 250), progress);
+        assertEquals(false, progress.allTasksCompleted());
+        assertEquals(true, RequestProgress.of(100, 100, new TaskProgress(99, 1, 990)).allTasksCompleted());
+    }
+}
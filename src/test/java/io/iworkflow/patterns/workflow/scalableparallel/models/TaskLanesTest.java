@@ -0,0 +1,100 @@
+package io.iworkflow.patterns.workflow.scalableparallel.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class TaskLanesTest {
+
+    @Test
+    public void testFifoWithinLane() {
+        TaskLanes lanes = TaskLanes.EMPTY
+                .add(queued("first", 0, 2, TaskPriority.NORMAL))
+                .add(queued("second", 0, 2, TaskPriority.NORMAL));
+
+        final TaskLanes.Taken taken = lanes.take(3);
+
+        assertEquals(List.of("first-run-0", "first-run-1", "second-run-0"), taken.taskIds());
+        assertEquals(1, taken.rest().pendingTasks());
+        assertEquals(1, taken.rest().numTaskRanges(TaskPriority.NORMAL));
+    }
+
+    @Test
+    public void testWeightedFair() {
+        final TaskLanes lanes = TaskLanes.EMPTY
+                .add(queued("low", 0, 1000, TaskPriority.LOW))
+                .add(queued("normal", 0, 1000, TaskPriority.NORMAL))
+                .add(queued("high", 0, 1000, TaskPriority.HIGH));
+
+        final Map<String, Integer> counts = countBySource(lanes.take(130).taskIds());
+
+        assertEquals(Map.of("high", 80, "normal", 40, "low", 10), counts);
+    }
+
+    @Test
+    public void testIdleLaneDoesNotCatchUp() {
+        TaskLanes lanes = TaskLanes.EMPTY.add(queued("normal", 0, 1000, TaskPriority.NORMAL));
+        lanes = lanes.take(100).rest();
+        // LOW was idle while NORMAL took 100 tasks, but only gets its share from now on
+        lanes = lanes.add(queued("low", 0, 1000, TaskPriority.LOW));
+
+        final Map<String, Integer> counts = countBySource(lanes.take(10).taskIds());
+
+        assertEquals(Map.of("normal", 8, "low", 2), counts);
+    }
+
+    @Test
+    public void testLaneLoads() {
+        final TaskLanes lanes = TaskLanes.EMPTY
+                .add(queued("high", 0, 10, TaskPriority.HIGH, 1000))
+                .add(queued("high2", 0, 5, TaskPriority.HIGH, 2000));
+
+        final Map<TaskPriority, LaneLoad> laneLoads = lanes.laneLoads(5000);
+
+        assertEquals(new LaneLoad(2, 15, 4000), laneLoads.get(TaskPriority.HIGH));
+        assertEquals(LaneLoad.EMPTY, laneLoads.get(TaskPriority.LOW));
+    }
+
+    @Test
+    public void testEstimateDrainMillis() {
+        final TaskLanes lanes = TaskLanes.EMPTY
+                .add(queued("low", 0, 100, TaskPriority.LOW))
+                .add(queued("low2", 0, 50, TaskPriority.LOW))
+                .add(queued("normal", 0, 1000, TaskPriority.NORMAL));
+
+        // LOW gets 1/5 of the pace of 1 task per millisecond while NORMAL also has tasks
+        assertEquals(750, lanes.estimateDrainMillis(TaskPriority.LOW, 1));
+        assertEquals(500, lanes.estimateHeadDrainMillis(TaskPriority.LOW, 1));
+        assertEquals(0, lanes.estimateHeadDrainMillis(TaskPriority.HIGH, 1));
+    }
+
+    @Test
+    public void testTaskIdsOfSourceRuns() {
+        final TaskRange firstRun = new TaskRange("request-1", "0b7e-41c2", 0, 10);
+        final TaskRange secondRun = new TaskRange("request-1", "9f3a-77d0", 0, 10);
+
+        assertEquals("request-1-0b7e41c2-5", firstRun.taskId(5));
+        assertNotEquals(firstRun.taskId(5), secondRun.taskId(5));
+        assertEquals("request-1", TaskRange.sourceIdOf(secondRun.taskId(5)));
+        assertEquals(TaskRange.sourceKey("request-1", "9f3a-77d0"), TaskRange.sourceKeyOf(secondRun.taskId(5)));
+    }
+
+    private static QueuedTaskRange queued(final String sourceId, final int start, final int end, final TaskPriority priority) {
+        return queued(sourceId, start, end, priority, 0);
+    }
+
+    private static QueuedTaskRange queued(final String sourceId, final int start, final int end, final TaskPriority priority, final long enqueuedTimestampMillis) {
+        return new QueuedTaskRange(new TaskRange(sourceId, "run", start, end), priority, enqueuedTimestampMillis);
+    }
+
+    private static Map<String, Integer> countBySource(final List<String> taskIds) {
+        final Map<String, Integer> counts = new TreeMap<>();
+        taskIds.forEach(taskId -> counts.merge(TaskRange.sourceIdOf(taskId), 1, Integer::sum));
+        return counts;
+    }
+}
@@ -0,0 +1,230 @@
+package io.iworkflow.patterns.workflow.storage;
+
+import io.iworkflow.core.Client;
+import io.iworkflow.core.RpcDefinitions;
+import io.iworkflow.core.exceptions.NoRunningWorkflowException;
+import io.iworkflow.core.exceptions.WorkflowAlreadyStartedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StorageClientTest {
+    private Client iwfClient;
+    private StorageWorkflow rpcStub;
+    private StorageClient storageClient;
+
+    @BeforeEach
+    void beforeEach() {
+        iwfClient = mock(Client.class);
+        rpcStub = mock(StorageWorkflow.class);
+        when(iwfClient.newRpcStub(eq(StorageWorkflow.class), anyString())).thenReturn(rpcStub);
+        storageClient = new StorageClient(iwfClient, 0);
+    }
+
+    private StorageClient newCachingStorageClient() {
+        invokeRpcsOnStub();
+        return new StorageClient(iwfClient, 0, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+    }
+
+    // invoke the stubbed RPC methods, so that the test can tell the RPCs apart
+    private void invokeRpcsOnStub() {
+        when(iwfClient.invokeRPC(any(RpcDefinitions.RpcFunc1.class), any())).thenAnswer(invocation -> {
+            final RpcDefinitions.RpcFunc1<Object, Object> rpcStubMethod = invocation.getArgument(0);
+            return rpcStubMethod.execute(null, invocation.getArgument(1), null, null);
+        });
+    }
+
+    @Test
+    public void testConcurrentFirstRequestsStartOnce() throws Exception {
+        when(iwfClient.startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull())).thenAnswer(invocation -> {
+            // a slow start, so that all the requests arrive while it's in progress
+            Thread.sleep(200);
+            return "runId";
+        });
+
+        final int numRequests = 100;
+        final ExecutorService executor = Executors.newFixedThreadPool(numRequests);
+        final CountDownLatch ready = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            final String key = "key-" + i;
+            futures.add(executor.submit(() -> {
+                ready.await();
+                storageClient.addItem(new AddStorageItemRequest(key, "value"));
+                return null;
+            }));
+        }
+        ready.countDown();
+        for (final Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        verify(iwfClient, times(1)).startWorkflow(eq(StorageWorkflow.class), eq(StorageWorkflow.getStorageWorkflowId()), anyInt(), isNull());
+        verify(iwfClient, times(numRequests)).invokeRPC(any(RpcDefinitions.RpcProc1.class), any());
+
+        // later requests are a single RPC
+        storageClient.removeItem("key-0");
+        verify(iwfClient, times(1)).startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull());
+    }
+
+    @Test
+    public void testAlreadyStartedIsStarted() {
+        when(iwfClient.startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull()))
+                .thenThrow(WorkflowAlreadyStartedException.class);
+
+        storageClient.removeItem("key");
+        storageClient.removeItem("key");
+
+        verify(iwfClient, times(1)).startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull());
+        verify(iwfClient, times(2)).invokeRPC(any(RpcDefinitions.RpcProc1.class), any());
+    }
+
+    @Test
+    public void testFailedStartIsRetried() {
+        when(iwfClient.startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull()))
+                .thenThrow(new IllegalStateException("server unavailable"))
+                .thenReturn("runId");
+
+        assertThrows(IllegalStateException.class, () -> storageClient.removeItem("key"));
+        storageClient.removeItem("key");
+
+        verify(iwfClient, times(2)).startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull());
+        verify(iwfClient, times(1)).invokeRPC(any(RpcDefinitions.RpcProc1.class), any());
+    }
+
+    @Test
+    public void testClosedWorkflowIsStartedAgain() {
+        when(iwfClient.startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull())).thenReturn("runId");
+        storageClient.removeItem("key");
+
+        doThrow(NoRunningWorkflowException.class).doNothing()
+                .when(iwfClient).invokeRPC(any(RpcDefinitions.RpcProc1.class), any());
+        storageClient.removeItem("key");
+
+        verify(iwfClient, times(2)).startWorkflow(eq(StorageWorkflow.class), anyString(), anyInt(), isNull());
+        verify(iwfClient, times(3)).invokeRPC(any(RpcDefinitions.RpcProc1.class), any());
+    }
+
+    @Test
+    public void testReadAfterWriteIsStrongAndNotCached() {
+        final StorageClient cachingClient = newCachingStorageClient();
+        when(rpcStub.getItem(any(), eq("key"), any(), any())).thenReturn("old");
+        when(rpcStub.getItemWithStrongConsistency(any(), eq("key"), any(), any())).thenReturn("new");
+
+        assertEquals("old", cachingClient.getItem("key", false));
+        assertEquals("old", cachingClient.getItem("key", false));
+        verify(rpcStub, times(1)).getItem(any(), eq("key"), any(), any());
+
+        cachingClient.addItem(new AddStorageItemRequest("key", "new"));
+
+        // the caching of iWF server may still return the old value, so the recently written key is read with strong
+        // consistency, and is not cached
+        assertEquals("new", cachingClient.getItem("key", false));
+        assertEquals("new", cachingClient.getItem("key", false));
+        assertEquals(Map.of("key", "new"), cachingClient.getItems(List.of("key")));
+        verify(rpcStub, times(1)).getItem(any(), eq("key"), any(), any());
+        verify(rpcStub, times(3)).getItemWithStrongConsistency(any(), eq("key"), any(), any());
+    }
+
+    @Test
+    public void testReadConcurrentWithWriteIsNotCached() throws Exception {
+        final StorageClient cachingClient = newCachingStorageClient();
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch written = new CountDownLatch(1);
+        when(rpcStub.getItem(any(), eq("key"), any(), any())).thenAnswer(invocation -> {
+            // the read RPC returns the old value, but only completes after the write
+            reading.countDown();
+            written.await();
+            return "old";
+        });
+        when(rpcStub.getItemWithStrongConsistency(any(), eq("key"), any(), any())).thenReturn("new");
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<String> read = executor.submit(() -> cachingClient.getItem("key", false));
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        cachingClient.addItem(new AddStorageItemRequest("key", "new"));
+        written.countDown();
+        assertEquals("old", read.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // the old value is not put back into the cache after the write invalidated it
+        assertEquals("new", cachingClient.getItem("key", false));
+        verify(rpcStub, times(1)).getItem(any(), eq("key"), any(), any());
+    }
+
+    @Test
+    public void testShardedGetItemsLoadsEachAttributeShardOnce() {
+        invokeRpcsOnStub();
+        when(rpcStub.getShard0Items(any(), any(), any(), any())).thenReturn(new Storage());
+        when(rpcStub.getShard1Items(any(), any(), any(), any())).thenReturn(new Storage());
+        when(rpcStub.getShard2Items(any(), any(), any(), any())).thenReturn(new Storage());
+        when(rpcStub.getShard3Items(any(), any(), any(), any())).thenReturn(new Storage());
+        final StorageClient shardedClient = new StorageClient(iwfClient, 1);
+        final StorageShardRouter router = new StorageShardRouter(1);
+
+        final List<String> keys = new ArrayList<>();
+        final Map<Integer, List<String>> keysByAttributeShard = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            final String key = "key-" + i;
+            keys.add(key);
+            keysByAttributeShard.computeIfAbsent(router.getShard(key).attributeShard(), k -> new ArrayList<>()).add(key);
+        }
+        shardedClient.getItems(keys);
+
+        // one RPC per attribute shard, with only the keys of that shard
+        assertEquals(StorageWorkflow.NUM_ATTRIBUTE_SHARDS, keysByAttributeShard.size());
+        verify(rpcStub).getShard0Items(any(), eq(new StorageKeysRequest(keysByAttributeShard.get(0))), any(), any());
+        verify(rpcStub).getShard1Items(any(), eq(new StorageKeysRequest(keysByAttributeShard.get(1))), any(), any());
+        verify(rpcStub).getShard2Items(any(), eq(new StorageKeysRequest(keysByAttributeShard.get(2))), any(), any());
+        verify(rpcStub).getShard3Items(any(), eq(new StorageKeysRequest(keysByAttributeShard.get(3))), any(), any());
+    }
+
+    @Test
+    public void testAddItemsIsOneRpcBelowPayloadLimit() {
+        final List<AddStorageItemRequest> items = new ArrayList<>();
+        for (int i = 0; i < 10 * StorageClient.MAX_ITEMS_PER_RPC; i++) {
+            items.add(new AddStorageItemRequest("key-" + i, "value-" + i));
+        }
+        storageClient.addItems(items);
+
+        // every RPC rewrites the whole storage data attribute, so the small items are not split by count
+        verify(iwfClient, times(1)).invokeRPC(any(RpcDefinitions.RpcProc1.class), eq(new AddStorageItemsRequest(items)));
+    }
+
+    @Test
+    public void testPartitionByPayload() {
+        final int half = StorageClient.MAX_WRITE_PAYLOAD_CHARS / 2;
+        final List<Integer> sizes = List.of(half, half, 1, StorageClient.MAX_WRITE_PAYLOAD_CHARS + 1, 1);
+
+        final List<List<Integer>> chunks = StorageClient.partitionByPayload(sizes, size -> size);
+
+        // in order, and a write larger than the limit is a chunk on its own
+        assertEquals(List.of(List.of(half, half), List.of(1), List.of(StorageClient.MAX_WRITE_PAYLOAD_CHARS + 1), List.of(1)), chunks);
+    }
+}
@@ -0,0 +1,222 @@
+package io.iworkflow.worker;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerCallbackExecutorTest {
+    // the default max threads of Tomcat(server.tomcat.threads.max), which run the callbacks in servlet mode
+    private static final int SERVLET_THREADS = 200;
+
+    @Test
+    public void testServletModeRunsInline() {
+        final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(WorkerCallbackExecutor.Mode.SERVLET, 1, Duration.ofSeconds(1));
+        final Thread caller = Thread.currentThread();
+
+        final CompletableFuture<Thread> future = executor.submit("wf", Thread::currentThread);
+
+        assertTrue(future.isDone());
+        assertEquals(caller, future.join());
+    }
+
+    @Test
+    public void testConcurrencyCapPerWorkflowType() {
+        final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(WorkerCallbackExecutor.Mode.PLATFORM, 2, Duration.ofSeconds(10));
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit("wf", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                return running.decrementAndGet();
+            }));
+        }
+        futures.forEach(CompletableFuture::join);
+        executor.shutdown();
+
+        assertTrue(maxRunning.get() <= 2);
+        assertEquals(0, executor.getInFlight("wf"));
+    }
+
+    @Test
+    public void testRejectWhenCapIsReached() throws InterruptedException {
+        final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(WorkerCallbackExecutor.Mode.PLATFORM, 1, Duration.ofMillis(100));
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CompletableFuture<Boolean> blocking = executor.submit("wf", () -> await(release));
+        while (executor.getInFlight("wf") == 0) {
+            Thread.sleep(10);
+        }
+        final CompletableFuture<Boolean> rejected = executor.submit("wf", () -> true);
+        // other workflow types are not affected
+        final CompletableFuture<Boolean> otherType = executor.submit("other-wf", () -> true);
+
+        final CompletionException e = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertTrue(otherType.join());
+
+        release.countDown();
+        assertTrue(blocking.join());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testServletModeAppliesCap() throws InterruptedException {
+        final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(WorkerCallbackExecutor.Mode.SERVLET, 1, Duration.ofMillis(100));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+
+        // another servlet container thread is running a callback of the same workflow type
+        final Thread servletThread = new Thread(() -> executor.submit("wf", () -> await(release)));
+        servletThread.start();
+        while (executor.getInFlight("wf") == 0) {
+            Thread.sleep(10);
+        }
+
+        final CompletableFuture<Integer> rejected = executor.submit("wf", ran::incrementAndGet);
+        final CompletionException e = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertEquals(0, ran.get());
+
+        release.countDown();
+        servletThread.join();
+        assertEquals(0, executor.getInFlight("wf"));
+    }
+
+    @Test
+    public void testPlatformThreadsAreBoundedByCap() throws InterruptedException {
+        final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(WorkerCallbackExecutor.Mode.PLATFORM, 2, Duration.ofMillis(20));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+
+        final List<CompletableFuture<Boolean>> blocking = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            blocking.add(executor.submit("wf", () -> await(release)));
+        }
+        for (int i = 0; i < 20; i++) {
+            final CompletableFuture<Integer> rejected = executor.submit("wf", ran::incrementAndGet);
+            final CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+
+        // the callbacks over the cap are rejected before taking a thread
+        assertEquals(0, ran.get());
+        assertTrue(executor.getPoolSize() <= 2);
+
+        release.countDown();
+        blocking.forEach(future -> assertTrue(future.join()));
+        executor.shutdown();
+    }
+
+    /**
+     * Blocking callbacks up to the cap don't wait for each other: each one only completes once all of them are running
+     * at the same time, which would time out if they were queued behind a small pool like the Tomcat threads.
+     */
+    @Test
+    public void testBlockingCallbacksRunConcurrently() {
+        final List<WorkerCallbackExecutor.Mode> modes = new ArrayList<>(List.of(WorkerCallbackExecutor.Mode.PLATFORM));
+        if (WorkerCallbackExecutor.isVirtualThreadSupported()) {
+            modes.add(WorkerCallbackExecutor.Mode.VIRTUAL);
+        }
+
+        final int numCallbacks = 500;
+        for (final WorkerCallbackExecutor.Mode mode : modes) {
+            final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(mode, numCallbacks, Duration.ofSeconds(10));
+            final CountDownLatch allRunning = new CountDownLatch(numCallbacks);
+
+            final List<CompletableFuture<Boolean>> futures = new ArrayList<>(numCallbacks);
+            for (int i = 0; i < numCallbacks; i++) {
+                futures.add(executor.submit("wf", () -> {
+                    allRunning.countDown();
+                    return awaitAtMost(allRunning, Duration.ofSeconds(10));
+                }));
+            }
+            futures.forEach(future -> assertTrue(future.join(), mode + " mode ran the blocking callbacks one batch at a time"));
+            assertEquals(0, executor.getInFlight("wf"));
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Load test of 10k concurrent blocking states per mode, run by `./gradlew loadTest`. The callbacks are submitted
+     * from a pool like the Tomcat threads, which the servlet mode blocks, while the other modes release them.
+     */
+    @Tag("load")
+    @Test
+    public void loadTestBlockingCallbackThroughput() {
+        final List<WorkerCallbackExecutor.Mode> modes = new ArrayList<>(List.of(
+                WorkerCallbackExecutor.Mode.SERVLET, WorkerCallbackExecutor.Mode.PLATFORM));
+        if (WorkerCallbackExecutor.isVirtualThreadSupported()) {
+            modes.add(WorkerCallbackExecutor.Mode.VIRTUAL);
+        }
+
+        final int numCallbacks = 10_000;
+        final long blockingMillis = 100;
+        for (final WorkerCallbackExecutor.Mode mode : modes) {
+            final WorkerCallbackExecutor executor = new WorkerCallbackExecutor(mode, numCallbacks, Duration.ofMinutes(1));
+            final ExecutorService servletThreads = Executors.newFixedThreadPool(SERVLET_THREADS);
+
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Boolean>> futures = new ArrayList<>(numCallbacks);
+            for (int i = 0; i < numCallbacks; i++) {
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> executor.submit("wf", () -> {
+                            sleep(blockingMillis);
+                            return true;
+                        }), servletThreads)
+                        .thenCompose(future -> future));
+            }
+            futures.forEach(future -> assertTrue(future.join()));
+            final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            System.out.printf("%s mode: %d callbacks blocking %dms each in %dms, %d callbacks/sec%n",
+                    mode, numCallbacks, blockingMillis, elapsedMillis, numCallbacks * 1000L / elapsedMillis);
+            assertEquals(0, executor.getInFlight("wf"));
+            servletThreads.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    private static boolean await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    private static boolean awaitAtMost(final CountDownLatch latch, final Duration timeout) {
+        try {
+            return latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
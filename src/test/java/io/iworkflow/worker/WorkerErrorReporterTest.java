@@ -0,0 +1,91 @@
+package io.iworkflow.worker;
+
+import io.iworkflow.gen.models.WorkerErrorResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerErrorReporterTest {
+    private static final int MAX_STACK_TRACE_FRAMES = 3;
+
+    private SimpleMeterRegistry registry;
+    private WorkerErrorReporter reporter;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMeterRegistry();
+        reporter = new WorkerErrorReporter(
+                registry,
+                Set.of(IllegalArgumentException.class.getName()),
+                MAX_STACK_TRACE_FRAMES,
+                100,
+                Duration.ofMinutes(10),
+                1);
+    }
+
+    @Test
+    public void testEveryOccurrenceHasTruncatedStackTrace() {
+        for (int i = 1; i <= 3; i++) {
+            final WorkerErrorResponse response = reporter.report("StorageWorkflow", "InitState", newException());
+
+            assertEquals(IllegalStateException.class.getName(), response.getErrorType());
+            assertTrue(response.getDetail().contains("; seen: " + i + ";"), response.getDetail());
+            assertTrue(response.getDetail().contains("; stack trace:" + IllegalStateException.class.getName()), response.getDetail());
+            assertEquals(MAX_STACK_TRACE_FRAMES, countOccurrences(response.getDetail(), "\n\tat "), response.getDetail());
+            assertTrue(response.getDetail().contains(" more"), response.getDetail());
+        }
+
+        assertEquals(3, registry.get("iwf.worker.failures")
+                .tags("workflowType", "StorageWorkflow", "stateOrRpc", "InitState", "retryable", "true")
+                .counter().count());
+    }
+
+    @Test
+    public void testFingerprintIsSharedByTheSameFailure() {
+        final String[] fingerprints = new String[2];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = fingerprintOf(reporter.report("StorageWorkflow", "InitState", newException()));
+        }
+        final String other = fingerprintOf(reporter.report("StorageWorkflow", "InitState", new IllegalStateException("other")));
+
+        assertEquals(fingerprints[0], fingerprints[1]);
+        assertFalse(fingerprints[0].equals(other));
+    }
+
+    @Test
+    public void testNonRetryableSubtype() {
+        final WorkerErrorResponse response = reporter.report(null, null, new NumberFormatException("bad number"));
+
+        assertFalse(reporter.isRetryable(new NumberFormatException("bad number")));
+        assertTrue(response.getDetail().contains("; retryable: false"), response.getDetail());
+        assertEquals(1, registry.get("iwf.worker.failures")
+                .tags("workflowType", WorkerMetrics.orNone(null), "retryable", "false")
+                .counter().count());
+    }
+
+    private static IllegalStateException newException() {
+        // the same call site, so the same top frames
+        return new IllegalStateException("storage unavailable");
+    }
+
+    private static String fingerprintOf(final WorkerErrorResponse response) {
+        final String detail = response.getDetail();
+        final int start = detail.indexOf("; fingerprint: ") + "; fingerprint: ".length();
+        return detail.substring(start, detail.indexOf(';', start));
+    }
+
+    private static int countOccurrences(final String text, final String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
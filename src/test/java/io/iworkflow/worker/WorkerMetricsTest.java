@@ -0,0 +1,55 @@
+package io.iworkflow.worker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WorkerMetricsTest {
+    private SimpleMeterRegistry registry;
+    private WorkerMetrics metrics;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = new SimpleMeterRegistry();
+        metrics = new WorkerMetrics(registry);
+    }
+
+    @Test
+    public void testRecordState() {
+        final String result = metrics.recordState(WorkerMetrics.API_EXECUTE, "StorageWorkflow", "InitState", 128, () -> "done");
+
+        assertEquals("done", result);
+        assertEquals(1, registry.get("iwf.worker.callback")
+                .tags("api", "execute", "workflowType", "StorageWorkflow", "stateId", "InitState", "outcome", "success")
+                .timer().count());
+        assertEquals(128, registry.get("iwf.worker.callback.payload")
+                .tags("workflowType", "StorageWorkflow")
+                .summary().totalAmount());
+    }
+
+    @Test
+    public void testRecordRpcFailure() {
+        assertThrows(IllegalStateException.class, () -> metrics.recordRpc("StorageWorkflow", "getItem", -1, () -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        assertEquals(1, registry.get("iwf.worker.callback")
+                .tags("api", "rpc", "rpcName", "getItem", "outcome", "failure")
+                .timer().count());
+        // unknown payload size is not recorded
+        assertNull(registry.find("iwf.worker.callback.payload").summary());
+    }
+
+    @Test
+    public void testRecordExecuteAttempt() {
+        metrics.recordExecuteAttempt("StorageWorkflow", "InitState", 1);
+        metrics.recordExecuteAttempt("StorageWorkflow", "InitState", 2);
+        metrics.recordExecuteAttempt("StorageWorkflow", "InitState", 3);
+
+        assertEquals(2, registry.get("iwf.worker.state.execute.retries").counter().count());
+    }
+}